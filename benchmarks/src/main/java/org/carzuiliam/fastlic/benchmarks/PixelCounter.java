@@ -0,0 +1,23 @@
+package org.carzuiliam.fastlic.benchmarks;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class PixelCounter {
+
+    public double megapixels;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        this.megapixels = 0;
+    }
+
+    public void add(int _width, int _height) {
+        this.megapixels += (_width * (double) _height) / 1_000_000.0;
+    }
+}
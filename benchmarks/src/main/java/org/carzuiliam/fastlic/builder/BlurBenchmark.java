@@ -0,0 +1,72 @@
+package org.carzuiliam.fastlic.builder;
+
+import org.carzuiliam.fastlic.benchmarks.PixelCounter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class BlurBenchmark {
+
+    @Param({"512", "2048"})
+    public int size;
+
+    @Param({"3"})
+    public int radius;
+
+    @Param({"1.0"})
+    public float sigma;
+
+    private FastLICBuilder builder;
+    private LICWorkspace workspace;
+    private byte[] source;
+    private byte[] image;
+
+    @Setup
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(42);
+
+        this.workspace = new LICWorkspace();
+        this.builder = new FastLICBuilder().setWorkspace(this.workspace);
+        this.source = new byte[this.size * this.size];
+        this.image = new byte[this.size * this.size];
+
+        for (int k = 0; k < this.source.length; k++) {
+            this.source[k] = (byte) random.nextInt(256);
+        }
+    }
+
+    // Each blur runs in place, so every invocation starts again from the same noise.
+    @Setup(Level.Invocation)
+    public void resetImage() {
+        System.arraycopy(this.source, 0, this.image, 0, this.source.length);
+    }
+
+    @Benchmark
+    public byte[] applyGaussianBlur(PixelCounter _counter) {
+        _counter.add(this.size, this.size);
+        this.builder.applyGaussianBlur(this.size, this.size, this.image, this.radius, this.sigma, this.workspace, null);
+        return this.image;
+    }
+
+    @Benchmark
+    public byte[] applyBoxBlur(PixelCounter _counter) {
+        _counter.add(this.size, this.size);
+        this.builder.applyBoxBlur(this.size, this.size, this.image, this.sigma, this.workspace, null);
+        return this.image;
+    }
+}
@@ -0,0 +1,108 @@
+package org.carzuiliam.fastlic.builder;
+
+import org.carzuiliam.fastlic.benchmarks.PixelCounter;
+import org.carzuiliam.fastlic.utils.AnalyticFlowSampler;
+import org.carzuiliam.fastlic.utils.FlowField;
+import org.carzuiliam.fastlic.utils.FlowSampler;
+import org.carzuiliam.fastlic.utils.GridFlowSampler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class LICBenchmark {
+
+    public enum Engine {
+        LIC,
+        FAST_LIC,
+        FAST_LIC_STREAMLINE
+    }
+
+    public enum Sampler {
+        MATERIALIZED,
+        ANALYTIC,
+        COARSE_GRID
+    }
+
+    @Param({"256", "512", "1024"})
+    public int size;
+
+    @Param({"10", "30"})
+    public float lowPassFilterLength;
+
+    @Param
+    public Engine engine;
+
+    @Param({"MATERIALIZED"})
+    public Sampler sampler;
+
+    private LICBuilder licBuilder;
+    private FastLICBuilder fastLICBuilder;
+    private LICWorkspace workspace;
+
+    private FlowSampler field;
+    private byte[] noise;
+    private byte[] image;
+    private float[] lut;
+
+    @Setup
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(42);
+
+        this.workspace = new LICWorkspace();
+        this.noise = new byte[this.size * this.size];
+        this.image = new byte[this.size * this.size];
+
+        for (int k = 0; k < this.noise.length; k++) {
+            this.noise[k] = (byte) random.nextInt(256);
+        }
+
+        this.field = switch (this.sampler) {
+            case MATERIALIZED -> {
+                FlowField grid = FlowField.generateFlowField(this.size, this.size, FlowField.Type.SPIRAL_SINK);
+                grid.normalize();
+                yield grid;
+            }
+            case ANALYTIC -> new AnalyticFlowSampler(this.size, this.size, FlowField.Type.SPIRAL_SINK);
+            case COARSE_GRID -> new GridFlowSampler(FlowField.generateFlowField(64, 64, FlowField.Type.SPIRAL_SINK), this.size, this.size);
+        };
+
+        this.licBuilder = new LICBuilder()
+                .setLowPassFilterLength(this.lowPassFilterLength)
+                .setWorkspace(this.workspace);
+
+        this.fastLICBuilder = new FastLICBuilder()
+                .setMode(this.engine == Engine.FAST_LIC_STREAMLINE ? FastLICBuilder.Mode.STREAMLINE : FastLICBuilder.Mode.PER_PIXEL)
+                .setLowPassFilterLength(this.lowPassFilterLength)
+                .setWorkspace(this.workspace);
+
+        this.lut = this.workspace.getBoxFilterLUT(2048);
+    }
+
+    @Benchmark
+    public byte[] flowImagingLIC(PixelCounter _counter) {
+        int n = this.size;
+
+        switch (this.engine) {
+            case LIC -> this.licBuilder.flowImagingLIC(n, n, this.field, this.noise, this.image, 0, this.lut, this.lut, 0, 0, n, n, null, RenderContext.NONE);
+            case FAST_LIC -> this.fastLICBuilder.flowImagingLIC(n, n, this.field, this.noise, this.image, 0, this.lut, this.lut, 0, 0, n, n, null, RenderContext.NONE);
+            case FAST_LIC_STREAMLINE -> this.fastLICBuilder.streamlineLIC(n, n, this.field, this.noise, this.image, this.workspace, RenderContext.NONE);
+        }
+
+        _counter.add(n, n);
+        return this.image;
+    }
+}
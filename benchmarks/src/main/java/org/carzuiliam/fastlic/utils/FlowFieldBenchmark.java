@@ -0,0 +1,48 @@
+package org.carzuiliam.fastlic.utils;
+
+import org.carzuiliam.fastlic.benchmarks.PixelCounter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class FlowFieldBenchmark {
+
+    @Param({"512", "2048"})
+    public int size;
+
+    @Param
+    public FlowField.Type type;
+
+    private FlowField field;
+
+    @Setup(Level.Invocation)
+    public void setUp() {
+        this.field = FlowField.generateFlowField(this.size, this.size, this.type);
+    }
+
+    @Benchmark
+    public FlowField generateFlowField(PixelCounter _counter) {
+        _counter.add(this.size, this.size);
+        return FlowField.generateFlowField(this.size, this.size, this.type);
+    }
+
+    @Benchmark
+    public FlowField normalizeVectors(PixelCounter _counter) {
+        _counter.add(this.size, this.size);
+        this.field.normalize();
+        return this.field;
+    }
+}
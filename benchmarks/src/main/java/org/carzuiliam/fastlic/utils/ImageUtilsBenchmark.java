@@ -0,0 +1,60 @@
+package org.carzuiliam.fastlic.utils;
+
+import org.carzuiliam.fastlic.benchmarks.PixelCounter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.SplittableRandom;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class ImageUtilsBenchmark {
+
+    @Param({"512", "2048"})
+    public int size;
+
+    private BufferedImage image;
+    private byte[] pixels;
+
+    @Setup
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(42);
+
+        this.image = new BufferedImage(this.size, this.size, BufferedImage.TYPE_INT_RGB);
+        this.pixels = new byte[this.size * this.size];
+
+        for (int y = 0; y < this.size; y++) {
+            for (int x = 0; x < this.size; x++) {
+                int value = random.nextInt(256);
+
+                this.image.setRGB(x, y, (value << 16) | (value << 8) | value);
+                this.pixels[y * this.size + x] = (byte) value;
+            }
+        }
+    }
+
+    @Benchmark
+    public byte[] readImageToByteArray(PixelCounter _counter) {
+        _counter.add(this.size, this.size);
+        return ImageUtils.readImageToByteArray(this.image, this.pixels);
+    }
+
+    @Benchmark
+    public void writeByteArrayToJPG(PixelCounter _counter) throws IOException {
+        _counter.add(this.size, this.size);
+        ImageUtils.writeByteArrayToJPG(this.size, this.size, this.pixels, "benchmark.jpg");
+    }
+}
@@ -0,0 +1,71 @@
+package org.carzuiliam.fastlic.builder;
+
+import org.carzuiliam.fastlic.utils.AnimationPlan;
+import org.carzuiliam.fastlic.utils.ImageUtils;
+import org.carzuiliam.fastlic.utils.TileExecutor;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+class AnimationRenderer {
+
+    static final float RIPPLES = 2.0f;
+
+    interface FrameFilter {
+        void apply(int _width, int _height, byte[] _image);
+    }
+
+    static void render(
+            ForkJoinPool _pool, LICWorkspace _workspace,
+            AnimationPlan _plan,
+            byte[] _texture,
+            int _lutSize, int _frames,
+            FrameFilter _filter,
+            String _pattern
+    ) throws IOException {
+        int width = _plan.getWidth();
+        int height = _plan.getHeight();
+
+        float[][] luts = _workspace.getPhaseLUTs(_lutSize);
+        float[] lut0 = luts[0];
+        float[] lut1 = luts[1];
+        byte[][] frames = _workspace.getAnimationFrames(width * height);
+        Future<?>[] pending = new Future<?>[2];
+        ExecutorService encoder = _workspace.getEncodeExecutor();
+
+        try {
+            for (int f = 0; f < _frames; f++) {
+                int slot = f & 1;
+                byte[] image = frames[slot];
+                String filename = String.format(_pattern, f);
+                float phase = (float) (2.0 * Math.PI * f / _frames);
+
+                Futures.await(pending[slot]);
+
+                AnimationPlan.createPhaseLUT(RIPPLES, phase, false, lut0);
+                AnimationPlan.createPhaseLUT(RIPPLES, phase, true, lut1);
+
+                TileExecutor.execute(_pool, width, height, TileExecutor.DEFAULT_TILE_SIZE, (x0, y0, x1, y1) ->
+                        _plan.apply(_texture, lut0, lut1, image, x0, y0, x1, y1)
+                );
+
+                if (_filter != null) {
+                    _filter.apply(width, height, image);
+                }
+
+                pending[slot] = encoder.submit(() -> {
+                    ImageUtils.writeByteArray(width, height, image, filename);
+                    return null;
+                });
+            }
+
+            Futures.await(pending[0]);
+            Futures.await(pending[1]);
+        } finally {
+            Futures.drain(pending[0]);
+            Futures.drain(pending[1]);
+        }
+    }
+}
@@ -0,0 +1,301 @@
+package org.carzuiliam.fastlic.builder;
+
+import org.carzuiliam.fastlic.utils.AngleFlowField;
+import org.carzuiliam.fastlic.utils.FlowField;
+import org.carzuiliam.fastlic.utils.FlowSampler;
+import org.carzuiliam.fastlic.utils.ImageTexture;
+import org.carzuiliam.fastlic.utils.NoiseTexture;
+import org.carzuiliam.fastlic.utils.TextureSource;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class BatchRenderer {
+
+    public interface Listener {
+        void finished(RenderSpec _spec, RenderStats _stats, Exception _error);
+    }
+
+    private int threads;
+    private long memoryBudget;
+    private long reserved;
+
+    public BatchRenderer() {
+        this.threads = Runtime.getRuntime().availableProcessors();
+        this.memoryBudget = Runtime.getRuntime().maxMemory() / 2;
+        this.reserved = 0;
+    }
+
+    public BatchRenderer setThreads(int _value) {
+        this.threads = Math.max(1, _value);
+        return this;
+    }
+
+    public BatchRenderer setMemoryBudget(long _bytes) {
+        this.memoryBudget = _bytes;
+        return this;
+    }
+
+    public void render(List<RenderSpec> _specs, Listener _listener) throws IOException {
+        Map<String, Shared<TextureSource>> textures = new HashMap<>();
+        Map<String, Shared<FlowSampler>> fields = new HashMap<>();
+        List<Job> jobs = new ArrayList<>();
+
+        for (RenderSpec spec : _specs) {
+            String imageName = spec.getInputImage();
+            Shared<TextureSource> texture = null;
+
+            if (imageName != null) {
+                texture = textures.get(imageName);
+
+                if (texture == null) {
+                    int[] size = readImageSize(imageName);
+
+                    texture = new Shared<>(size[0], size[1], 4L * size[0] * size[1], () -> new ImageTexture(readImage(imageName)));
+                    textures.put(imageName, texture);
+                }
+            }
+
+            int width = (texture != null) ? texture.width : spec.getSquareFlowFieldSize();
+            int height = (texture != null) ? texture.height : spec.getSquareFlowFieldSize();
+            FlowField.Type type = spec.getFlowFieldType();
+            boolean compact = spec.isCompactFlowField();
+            String fieldKey = type + "@" + width + "x" + height + (compact ? ":compact" : "");
+
+            Shared<FlowSampler> field = fields.computeIfAbsent(fieldKey, key -> new Shared<>(width, height, (compact ? 2L : 8L) * width * height, () -> {
+                if (compact) {
+                    return AngleFlowField.generate(width, height, type);
+                }
+
+                FlowField vectors = FlowField.generateFlowField(width, height, type);
+                vectors.normalize();
+                return vectors;
+            }));
+
+            jobs.add(new Job(spec, fieldKey, texture, field));
+        }
+
+        // Jobs sharing a field (then a texture) run back to back, so shared inputs are dropped as early as possible.
+        jobs.sort(Comparator.comparing((Job job) -> job.fieldKey)
+                .thenComparing(job -> job.spec.getInputImage(), Comparator.nullsLast(Comparator.naturalOrder())));
+
+        BlockingQueue<LICWorkspace> workspaces = new ArrayBlockingQueue<>(this.threads);
+        ExecutorService executor = Executors.newFixedThreadPool(this.threads);
+        List<Future<?>> pending = new ArrayList<>();
+
+        for (int t = 0; t < this.threads; t++) {
+            workspaces.add(new LICWorkspace());
+        }
+
+        try {
+            for (Job job : jobs) {
+                pending.add(executor.submit(() -> {
+                    this.run(job, workspaces, _listener);
+                    return null;
+                }));
+            }
+
+            for (Future<?> future : pending) {
+                Futures.await(future);
+            }
+        } finally {
+            executor.shutdownNow();
+
+            for (LICWorkspace workspace : workspaces) {
+                workspace.release();
+            }
+        }
+    }
+
+    private void run(Job _job, BlockingQueue<LICWorkspace> _workspaces, Listener _listener) throws InterruptedException {
+        this.reserve(_job);
+
+        LICWorkspace workspace = _workspaces.take();
+        RenderStats stats = null;
+        Exception error = null;
+
+        try {
+            stats = this.generate(_job, workspace);
+        } catch (IOException | RuntimeException e) {
+            error = e;
+        } finally {
+            _workspaces.add(workspace);
+            this.release(_job);
+        }
+
+        _listener.finished(_job.spec, stats, error);
+    }
+
+    private RenderStats generate(Job _job, LICWorkspace _workspace) throws IOException {
+        RenderSpec spec = _job.spec;
+        FlowSampler field = _job.field.get();
+        TextureSource texture = (_job.texture != null) ? _job.texture.get()
+                : new NoiseTexture(field.getWidth(), field.getHeight(), spec.getNoiseSeed());
+
+        // Jobs run side by side, so each one stays single-threaded whatever parallelism its spec asks for.
+        return switch (spec.getEngine()) {
+            case LIC -> spec.configure(new LICBuilder().setWorkspace(_workspace))
+                    .setParallelism(1)
+                    .setFlowField(field)
+                    .setInputTexture(texture)
+                    .generate(spec.getOutput());
+            case FAST_LIC -> spec.configure(new FastLICBuilder().setWorkspace(_workspace))
+                    .setParallelism(1)
+                    .setFlowField(field)
+                    .setInputTexture(texture)
+                    .generate(spec.getOutput());
+        };
+    }
+
+    private synchronized void reserve(Job _job) throws InterruptedException {
+        long cost = this.getCost(_job);
+
+        while (this.reserved > 0 && this.reserved + cost > this.memoryBudget) {
+            this.wait();
+            cost = this.getCost(_job);
+        }
+
+        this.reserved += cost;
+        _job.field.charged = true;
+
+        if (_job.texture != null) {
+            _job.texture.charged = true;
+        }
+    }
+
+    private synchronized void release(Job _job) {
+        this.reserved -= _job.workingBytes + _job.field.release();
+
+        if (_job.texture != null) {
+            this.reserved -= _job.texture.release();
+        }
+
+        this.notifyAll();
+    }
+
+    private long getCost(Job _job) {
+        long cost = _job.workingBytes;
+
+        if (!_job.field.charged) {
+            cost += _job.field.bytes;
+        }
+
+        if (_job.texture != null && !_job.texture.charged) {
+            cost += _job.texture.bytes;
+        }
+
+        return cost;
+    }
+
+    private static InputStream openResource(String _resourceName) throws FileNotFoundException {
+        InputStream input = BatchRenderer.class.getClassLoader().getResourceAsStream(_resourceName);
+
+        if (input == null) {
+            throw new FileNotFoundException("File " + _resourceName + " not found.");
+        }
+
+        return input;
+    }
+
+    private static BufferedImage readImage(String _resourceName) throws IOException {
+        try (InputStream input = openResource(_resourceName)) {
+            return ImageIO.read(input);
+        }
+    }
+
+    private static int[] readImageSize(String _resourceName) throws IOException {
+        try (InputStream resource = openResource(_resourceName); ImageInputStream input = ImageIO.createImageInputStream(resource)) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+
+            if (!readers.hasNext()) {
+                throw new IOException("Unsupported image format for " + _resourceName + ".");
+            }
+
+            ImageReader reader = readers.next();
+
+            try {
+                reader.setInput(input);
+                return new int[]{reader.getWidth(0), reader.getHeight(0)};
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private interface Loader<T> {
+        T load() throws IOException;
+    }
+
+    private static class Shared<T> {
+        private final int width;
+        private final int height;
+        private final long bytes;
+        private final Loader<T> loader;
+
+        private T value;
+        private int uses;
+        private boolean charged;
+
+        Shared(int _width, int _height, long _bytes, Loader<T> _loader) {
+            this.width = _width;
+            this.height = _height;
+            this.bytes = _bytes;
+            this.loader = _loader;
+        }
+
+        synchronized T get() throws IOException {
+            if (this.value == null) {
+                this.value = this.loader.load();
+            }
+
+            return this.value;
+        }
+
+        synchronized long release() {
+            if (--this.uses > 0) {
+                return 0;
+            }
+
+            this.value = null;
+            return this.charged ? this.bytes : 0;
+        }
+    }
+
+    private static class Job {
+        private final RenderSpec spec;
+        private final String fieldKey;
+        private final Shared<TextureSource> texture;
+        private final Shared<FlowSampler> field;
+        private final long workingBytes;
+
+        Job(RenderSpec _spec, String _fieldKey, Shared<TextureSource> _texture, Shared<FlowSampler> _field) {
+            this.spec = _spec;
+            this.fieldKey = _fieldKey;
+            this.texture = _texture;
+            this.field = _field;
+            this.workingBytes = (long) _field.width * _field.height * ((_spec.getEngine() == RenderSpec.Engine.FAST_LIC) ? 8 : 2);
+
+            _field.uses++;
+
+            if (_texture != null) {
+                _texture.uses++;
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package org.carzuiliam.fastlic.builder;
+
+import org.carzuiliam.fastlic.utils.BlockLayout;
+import org.carzuiliam.fastlic.utils.ChannelRecorder;
+import org.carzuiliam.fastlic.utils.FlowSampler;
+import org.carzuiliam.fastlic.utils.ImageUtils;
+import org.carzuiliam.fastlic.utils.TileExecutor;
+
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+
+class ChannelRenderer {
+
+    static RenderStats render(
+            ForkJoinPool _pool, LICWorkspace _workspace,
+            int _width, int _height, BlockLayout _layout,
+            RegionRenderer.Input<byte[][]> _planes, RegionRenderer.Input<FlowSampler> _field,
+            RegionRenderer.Trace _trace, RegionRenderer.Blur _blur,
+            String _filename
+    ) throws IOException {
+        RenderStats stats = new RenderStats(_width, _height);
+        byte[][] planes;
+        FlowSampler field;
+
+        try (RenderStats.Timer ignored = stats.time(RenderStats.Stage.TEXTURE)) {
+            planes = _planes.read(_width, _height);
+        }
+
+        try (RenderStats.Timer ignored = stats.time(RenderStats.Stage.FIELD)) {
+            field = _field.read(_width, _height);
+        }
+
+        if (_layout != null) {
+            byte[][] blocked = _workspace.getBlockedPlanes(planes.length, _layout.getSize());
+
+            for (int c = 0; c < planes.length; c++) {
+                planes[c] = _layout.toBlocked(planes[c], blocked[c]);
+            }
+        }
+
+        byte[][] outputs = _workspace.getChannelImages(planes.length, _width * _height);
+        byte[] image = _workspace.getOutputImage(_width * _height);
+        RenderContext context = new RenderContext(stats, null, _layout);
+
+        try (RenderStats.Timer ignored = stats.time(RenderStats.Stage.TRACE)) {
+            TileExecutor.execute(_pool, _width, _height, TileExecutor.DEFAULT_TILE_SIZE, (x0, y0, x1, y1) ->
+                    _trace.trace(_width, _height, field, planes[0], image, 0, x0, y0, x1, y1,
+                            new ChannelRecorder(planes, outputs, _width, x0, y0, x1), context)
+            );
+        }
+
+        if (_blur != null) {
+            try (RenderStats.Timer ignored = stats.time(RenderStats.Stage.BLUR)) {
+                for (byte[] output : outputs) {
+                    _blur.apply(_width, _height, output, _workspace, null);
+                }
+            }
+        }
+
+        try (RenderStats.Timer ignored = stats.time(RenderStats.Stage.ENCODE)) {
+            ImageUtils.writeChannels(_width, _height, outputs, _filename);
+        }
+
+        stats.finish();
+        return stats;
+    }
+}
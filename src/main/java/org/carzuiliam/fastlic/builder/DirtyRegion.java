@@ -0,0 +1,45 @@
+package org.carzuiliam.fastlic.builder;
+
+class DirtyRegion {
+
+    final int x0;
+    final int y0;
+    final int x1;
+    final int y1;
+
+    private DirtyRegion(int _x0, int _y0, int _x1, int _y1) {
+        this.x0 = _x0;
+        this.y0 = _y0;
+        this.x1 = _x1;
+        this.y1 = _y1;
+    }
+
+    static DirtyRegion of(int _width, int _height, int _x0, int _y0, int _x1, int _y1) {
+        if (_x0 < 0 || _y0 < 0 || _x1 > _width || _y1 > _height || _x0 >= _x1 || _y0 >= _y1) {
+            throw new IllegalArgumentException("Region " + _x0 + "," + _y0 + "-" + _x1 + "," + _y1
+                    + " is empty or outside the " + _width + "x" + _height + " image.");
+        }
+
+        return new DirtyRegion(_x0, _y0, _x1, _y1);
+    }
+
+    DirtyRegion dilate(int _width, int _height, int _margin) {
+        return new DirtyRegion(
+                Math.max(0, this.x0 - _margin), Math.max(0, this.y0 - _margin),
+                Math.min(_width, this.x1 + _margin), Math.min(_height, this.y1 + _margin)
+        );
+    }
+
+    // Pixels whose streamlines can reach the region.
+    DirtyRegion reach(int _width, int _height, int _length) {
+        return this.dilate(_width, _height, _length);
+    }
+
+    int getWidth() {
+        return this.x1 - this.x0;
+    }
+
+    int getHeight() {
+        return this.y1 - this.y0;
+    }
+}
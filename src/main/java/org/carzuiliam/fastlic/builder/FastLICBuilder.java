@@ -1,8 +1,22 @@
 package org.carzuiliam.fastlic.builder;
 
+import org.carzuiliam.fastlic.utils.AnalyticFlowSampler;
+import org.carzuiliam.fastlic.utils.AngleFlowField;
+import org.carzuiliam.fastlic.utils.AnimationPlan;
+import org.carzuiliam.fastlic.utils.BlockLayout;
+import org.carzuiliam.fastlic.utils.BlockedFlowField;
+import org.carzuiliam.fastlic.utils.ConvolutionPlan;
 import org.carzuiliam.fastlic.utils.FlowField;
+import org.carzuiliam.fastlic.utils.FlowSampler;
+import org.carzuiliam.fastlic.utils.ImageTexture;
 import org.carzuiliam.fastlic.utils.ImageUtils;
-import org.carzuiliam.fastlic.utils.Vector2D;
+import org.carzuiliam.fastlic.utils.Kernels;
+import org.carzuiliam.fastlic.utils.MappedFlowField;
+import org.carzuiliam.fastlic.utils.NoiseTexture;
+import org.carzuiliam.fastlic.utils.SampleRecorder;
+import org.carzuiliam.fastlic.utils.StreamlineIntegrator;
+import org.carzuiliam.fastlic.utils.TextureSource;
+import org.carzuiliam.fastlic.utils.TileExecutor;
 
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
@@ -10,61 +24,268 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Random;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
+
+public class FastLICBuilder implements Cloneable {
+
+    public enum Mode {
+        PER_PIXEL,
+        STREAMLINE
+    }
+
+    public enum BlurMode {
+        NONE,
+        GAUSSIAN,
+        BOX_CASCADE
+    }
 
-public class FastLICBuilder {
+    private static final float STREAMLINE_STEP = 0.5f;
+    private static final int BOX_PASSES = 3;
 
     private FlowField.Type flowFieldType;
+    private Mode mode;
+    private BlurMode blurMode;
 
     private int squareFlowFieldSize;
     private int discreteFilterSize;
     private float lowPassFilterLength;
     private float lineSquareClipMax;
     private float vectorComponentMinimum;
+    private int parallelism;
+    private float streamlineLength;
+    private int minimumHits;
+    private int blurRadius;
+    private float blurSigma;
 
     private BufferedImage inputImage;
+    private TextureSource inputTexture;
+    private FlowSampler flowField;
+    private ConvolutionPlan convolutionPlan;
+    private boolean planCaching;
+    private boolean lazyFlowField;
+    private boolean blockedLayout;
+    private boolean compactFlowField;
+    private int noiseChannels;
+    private int previewSize;
+    private Long noiseSeed;
+    private boolean noiseDump;
+    private StreamlineIntegrator.Method integrationMethod;
+    private float integrationStep;
+    private float integrationTolerance;
+    private LICWorkspace workspace;
+    private CompletableFuture<RenderStats> progressive;
 
     public FastLICBuilder() {
         this.flowFieldType = FlowField.Type.SADDLE;
+        this.mode = Mode.PER_PIXEL;
+        this.blurMode = BlurMode.GAUSSIAN;
         this.squareFlowFieldSize = 400;
         this.discreteFilterSize = 2048;
         this.lowPassFilterLength = 10.0f;
         this.lineSquareClipMax = 100000.0f;
         this.vectorComponentMinimum = 0.05f;
+        this.parallelism = Runtime.getRuntime().availableProcessors();
+        this.streamlineLength = 100.0f;
+        this.minimumHits = 1;
+        this.blurRadius = 3;
+        this.blurSigma = 1.0f;
         this.inputImage = null;
+        this.inputTexture = null;
+        this.flowField = null;
+        this.convolutionPlan = null;
+        this.planCaching = false;
+        this.lazyFlowField = false;
+        this.blockedLayout = false;
+        this.compactFlowField = false;
+        this.noiseChannels = 3;
+        this.previewSize = 128;
+        this.noiseSeed = null;
+        this.noiseDump = false;
+        this.integrationMethod = null;
+        this.integrationStep = 2.0f;
+        this.integrationTolerance = 0.01f;
+        this.workspace = new LICWorkspace();
     }
 
     public FastLICBuilder setFlowFieldType(FlowField.Type _type) {
         this.flowFieldType = _type;
+        this.convolutionPlan = null;
+        return this;
+    }
+
+    public FastLICBuilder setMode(Mode _mode) {
+        this.mode = _mode;
         return this;
     }
 
     public FastLICBuilder setSquareFlowFieldSize(int _value) {
         this.squareFlowFieldSize = _value;
+        this.convolutionPlan = null;
         return this;
     }
 
     public FastLICBuilder setDiscreteFilterSize(int _value) {
         this.discreteFilterSize = _value;
+        this.convolutionPlan = null;
         return this;
     }
 
     public FastLICBuilder setLowPassFilterLength(float _value) {
         this.lowPassFilterLength = _value;
+        this.convolutionPlan = null;
         return this;
     }
 
     public FastLICBuilder setLineSquareClipMax(float _value) {
         this.lineSquareClipMax = _value;
+        this.convolutionPlan = null;
         return this;
     }
 
     public FastLICBuilder setVectorComponentMinimum(float _value) {
         this.vectorComponentMinimum = _value;
+        this.convolutionPlan = null;
+        return this;
+    }
+
+    public FastLICBuilder setParallelism(int _value) {
+        this.parallelism = Math.max(1, _value);
+        return this;
+    }
+
+    public FastLICBuilder setStreamlineLength(float _value) {
+        this.streamlineLength = _value;
+        return this;
+    }
+
+    public FastLICBuilder setMinimumHits(int _value) {
+        this.minimumHits = Math.max(1, _value);
+        return this;
+    }
+
+    public FastLICBuilder setBlurMode(BlurMode _mode) {
+        this.blurMode = _mode;
+        return this;
+    }
+
+    public FastLICBuilder setBlurRadius(int _value) {
+        this.blurRadius = Math.max(0, _value);
+        return this;
+    }
+
+    public FastLICBuilder setBlurSigma(float _value) {
+        this.blurSigma = _value;
+        return this;
+    }
+
+    public FastLICBuilder setWorkspace(LICWorkspace _workspace) {
+        this.workspace = _workspace;
+        return this;
+    }
+
+    public FastLICBuilder setFlowField(FlowSampler _flowField) {
+        // Setting the same field again means it was edited in place, so its blocked copy is stale.
+        if (_flowField == this.flowField) {
+            this.workspace.setBlockedFlowField(null, null);
+        }
+
+        this.flowField = _flowField;
+        this.convolutionPlan = null;
+        return this;
+    }
+
+    public FastLICBuilder setFlowFieldFile(String _filename) throws IOException {
+        this.flowField = (_filename != null) ? MappedFlowField.open(Path.of(_filename)) : null;
+        this.convolutionPlan = null;
+        return this;
+    }
+
+    public FastLICBuilder setInputTexture(TextureSource _texture) {
+        this.inputTexture = _texture;
+        this.convolutionPlan = null;
+        return this;
+    }
+
+    public FastLICBuilder setConvolutionPlan(ConvolutionPlan _plan) {
+        this.convolutionPlan = _plan;
+        return this;
+    }
+
+    public FastLICBuilder setPlanCaching(boolean _value) {
+        this.planCaching = _value;
+        return this;
+    }
+
+    public FastLICBuilder setLazyFlowField(boolean _value) {
+        this.lazyFlowField = _value;
+        this.convolutionPlan = null;
+        return this;
+    }
+
+    public FastLICBuilder setCompactFlowField(boolean _value) {
+        this.compactFlowField = _value;
+        this.convolutionPlan = null;
+        return this;
+    }
+
+    public FastLICBuilder setBlockedLayout(boolean _value) {
+        this.blockedLayout = _value;
+        this.convolutionPlan = null;
+        return this;
+    }
+
+    public FastLICBuilder setNoiseSeed(long _seed) {
+        this.noiseSeed = _seed;
+        return this;
+    }
+
+    public FastLICBuilder setNoiseDump(boolean _value) {
+        this.noiseDump = _value;
+        return this;
+    }
+
+    public FastLICBuilder setNoiseChannels(int _value) {
+        this.noiseChannels = Math.max(1, _value);
+        return this;
+    }
+
+    public FastLICBuilder setPreviewSize(int _value) {
+        this.previewSize = Math.max(1, _value);
+        return this;
+    }
+
+    public FastLICBuilder setIntegrator(StreamlineIntegrator.Method _method) {
+        this.integrationMethod = _method;
+        this.convolutionPlan = null;
         return this;
     }
 
+    public FastLICBuilder setIntegrationStep(float _value) {
+        this.integrationStep = _value;
+        this.convolutionPlan = null;
+        return this;
+    }
+
+    public FastLICBuilder setIntegrationTolerance(float _value) {
+        this.integrationTolerance = _value;
+        this.convolutionPlan = null;
+        return this;
+    }
+
+    public ConvolutionPlan getConvolutionPlan() {
+        return this.convolutionPlan;
+    }
+
     public FastLICBuilder setInputImage(String _resourceName) throws IOException {
+        this.convolutionPlan = null;
+
         if (_resourceName == null) {
             this.inputImage = null;
             return this;
@@ -80,205 +301,919 @@ public class FastLICBuilder {
         return this;
     }
 
-    public void generate(String _filename) throws IOException {
-        int width;
-        int height;
+    public RenderStats generate(String _filename) throws IOException {
+        return this.generate(_filename, null, null);
+    }
+
+    public RenderStats generate(OutputStream _output, String _format) throws IOException {
+        return this.generate(_format, _output, null);
+    }
+
+    private RenderStats generate(String _filename, OutputStream _output, RenderControl _control) throws IOException {
+        int width = this.getOutputWidth();
+        int height = this.getOutputHeight();
 
+        RenderStats stats = new RenderStats(width, height);
         byte[] inputTexture;
 
+        try (RenderStats.Timer ignored = stats.time(RenderStats.Stage.TEXTURE)) {
+            inputTexture = this.readTexture(width, height);
+        }
+
+        this.render(width, height, inputTexture, _filename, _output, new RenderContext(stats, _control, null));
+
+        stats.finish();
+        return stats;
+    }
+
+    private int getOutputWidth() {
+        return (this.inputImage != null) ? this.inputImage.getWidth()
+                : (this.inputTexture != null) ? this.inputTexture.getWidth()
+                : (this.flowField != null) ? this.flowField.getWidth() : this.squareFlowFieldSize;
+    }
+
+    private int getOutputHeight() {
+        return (this.inputImage != null) ? this.inputImage.getHeight()
+                : (this.inputTexture != null) ? this.inputTexture.getHeight()
+                : (this.flowField != null) ? this.flowField.getHeight() : this.squareFlowFieldSize;
+    }
+
+    private byte[] readTexture(int _width, int _height) throws IOException {
         if (this.inputImage != null) {
-            width = this.inputImage.getWidth();
-            height = this.inputImage.getHeight();
-            inputTexture = ImageUtils.readImageToByteArray(this.inputImage);
-        } else {
-            width = this.squareFlowFieldSize;
-            height = this.squareFlowFieldSize;
-            inputTexture = this.makeWhiteNoise(width, height);
+            return ImageUtils.readImageToByteArray(this.inputImage, this.workspace.getTexture(_width * _height));
+        }
+
+        if (this.inputTexture != null) {
+            byte[] texture = this.workspace.getTexture(_width * _height);
+
+            this.inputTexture.read(0, 0, _width, _height, texture);
+            return texture;
+        }
+
+        byte[] noise = this.makeWhiteNoise(_width, _height, this.getNoiseSeed(), this.workspace.getTexture(_width * _height));
+
+        if (this.noiseDump) {
+            ImageUtils.writeByteArrayToJPG(_width, _height, noise, "noise.jpg");
+        }
+
+        return noise;
+    }
+
+    // The decoded input stays in the workspace, so later edits of the same source only read their own rectangle again.
+    private byte[] readTexture(int _width, int _height, int _x0, int _y0, int _x1, int _y1) throws IOException {
+        Object source = (this.inputImage != null) ? this.inputImage : this.inputTexture;
+
+        if (source == null) {
+            return this.readTexture(_width, _height);
+        }
+
+        TextureSource input = this.getTextureSource();
+        byte[] texture = this.workspace.getInputTexture(source);
+
+        if (texture == null) {
+            texture = this.workspace.resetInputTexture(source, _width * _height);
+            input.read(0, 0, _width, _height, texture);
+            return texture;
+        }
+
+        int regionWidth = _x1 - _x0;
+        int regionHeight = _y1 - _y0;
+        byte[] region = this.workspace.getWindowImage(regionWidth * regionHeight);
+
+        input.read(_x0, _y0, regionWidth, regionHeight, region);
+
+        for (int y = 0; y < regionHeight; y++) {
+            System.arraycopy(region, y * regionWidth, texture, (_y0 + y) * _width + _x0, regionWidth);
+        }
+
+        return texture;
+    }
+
+    private void render(int _width, int _height, byte[] _texture, String _filename, OutputStream _output, RenderContext _context) throws IOException {
+        RenderStats stats = _context.stats;
+        float[] lut = this.workspace.getBoxFilterLUT(this.discreteFilterSize);
+        ForkJoinPool pool = this.workspace.getPool(this.parallelism);
+        ConvolutionPlan plan;
+        FlowSampler field;
+
+        try (RenderStats.Timer ignored = stats.time(RenderStats.Stage.PLAN)) {
+            plan = this.resolveConvolutionPlan(_width, _height);
+        }
+
+        try (RenderStats.Timer ignored = stats.time(RenderStats.Stage.FIELD)) {
+            field = (plan == null) ? this.getFlowSampler(_width, _height) : null;
+        }
+
+        BlockLayout layout = (plan == null && this.mode == Mode.PER_PIXEL) ? this.getBlockLayout(_width, _height) : null;
+        byte[] texture = (layout != null) ? layout.toBlocked(_texture, this.workspace.getBlockedTexture(layout.getSize())) : _texture;
+        FlowSampler vectors = this.toLayout(field, layout);
+        RenderContext context = _context.withLayout(layout);
+
+        if (plan == null && this.mode == Mode.PER_PIXEL && this.blurMode != BlurMode.BOX_CASCADE) {
+            float[] kernel = (this.blurMode == BlurMode.GAUSSIAN) ? this.getGaussianKernel(this.blurRadius, this.blurSigma, this.workspace) : null;
+
+            StreamingRenderer.render(_width, _height, kernel, (y0, y1, band) ->
+                    TileExecutor.execute(pool, _width, y1 - y0, TileExecutor.DEFAULT_TILE_SIZE, (x0, ty0, x1, ty1) ->
+                            this.flowImagingLIC(_width, _height, vectors, texture, band, y0 * _width, lut, lut, x0, y0 + ty0, x1, y0 + ty1, null, context)
+                    ),
+                    ImageUtils.openRowWriter(_width, _height, _filename, _output),
+                    this.workspace, stats
+            );
+
+            return;
+        }
+
+        byte[] outputImage = this.workspace.getOutputImage(_width * _height);
+
+        try (RenderStats.Timer ignored = stats.time(RenderStats.Stage.TRACE)) {
+            if (plan != null) {
+                TileExecutor.execute(pool, _width, _height, TileExecutor.DEFAULT_TILE_SIZE, (x0, y0, x1, y1) ->
+                        plan.apply(_texture, outputImage, x0, y0, x1, y1)
+                );
+            } else if (this.mode == Mode.STREAMLINE) {
+                this.streamlineLIC(_width, _height, field, _texture, outputImage, this.workspace, context);
+            } else {
+                TileExecutor.execute(pool, _width, _height, TileExecutor.DEFAULT_TILE_SIZE, (x0, y0, x1, y1) ->
+                        this.flowImagingLIC(_width, _height, vectors, texture, outputImage, 0, lut, lut, x0, y0, x1, y1, null, context)
+                );
+            }
+        }
+
+        try (RenderStats.Timer ignored = stats.time(RenderStats.Stage.BLUR)) {
+            this.applyBlur(_width, _height, outputImage, this.workspace, context.control);
+        }
+
+        try (RenderStats.Timer ignored = stats.time(RenderStats.Stage.ENCODE)) {
+            ImageUtils.writeByteArray(_width, _height, outputImage, _filename, _output);
+        }
+    }
+
+    public CompletableFuture<RenderStats> generateAsync(String _filename, ProgressListener _listener) {
+        CompletableFuture<RenderStats> future = new CompletableFuture<>();
+        FastLICBuilder snapshot = this.snapshot();
+
+        this.workspace.getRenderExecutor().execute(() -> {
+            if (future.isDone()) {
+                return;
+            }
+
+            try {
+                future.complete(snapshot.generate(_filename, null, new RenderControl(future, _listener)));
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        });
+
+        return future;
+    }
+
+    public RenderStats generateIncremental(byte[] _image, int _x0, int _y0, int _x1, int _y1) throws IOException {
+        if (this.mode != Mode.PER_PIXEL) {
+            throw new IllegalStateException("Incremental rendering is only available in the PER_PIXEL mode.");
+        }
+
+        // Fresh noise would change every pixel, so a noise input must come from a fixed seed.
+        if (this.inputImage == null && this.inputTexture == null && this.noiseSeed == null) {
+            throw new IllegalStateException("Incremental rendering needs an input image, an input texture or a noise seed.");
+        }
+
+        return RegionRenderer.renderIncremental(
+                this.workspace.getPool(this.parallelism), this.workspace,
+                this.getOutputWidth(), this.getOutputHeight(), _image,
+                _x0, _y0, _x1, _y1,
+                (int) Math.ceil(this.lowPassFilterLength) + 2, this.getBlurExtent(),
+                (w, h) -> this.readTexture(w, h, _x0, _y0, _x1, _y1), this::getFlowSampler,
+                this.getTrace(), this.getBlur()
+        );
+    }
+
+    public CompletableFuture<RenderStats> generateProgressive(String _filename, PreviewListener _listener) {
+        CompletableFuture<RenderStats> future = new CompletableFuture<>();
+        CompletableFuture<RenderStats> previous = this.progressive;
+
+        this.progressive = future;
 
-            ImageUtils.writeByteArrayToJPG(width, height, inputTexture, "noise.jpg");
+        if (previous != null) {
+            previous.cancel(false);
         }
 
-        byte[] outputImage = new byte[width * height];
-        float[] lut0 = this.generateBoxFilterLUT();
-        float[] lut1 = this.generateBoxFilterLUT();
-        Vector2D[] vectors = FlowField.generateFlowField(width, height, this.flowFieldType);
+        // The passes run on a copy, so setters called for the next request don't leak into this one.
+        FastLICBuilder snapshot = this.snapshot();
 
+        this.workspace.getRenderExecutor().execute(() -> {
+            if (future.isDone()) {
+                return;
+            }
+
+            try {
+                future.complete(snapshot.renderProgressive(_filename, _listener, new RenderControl(future, null)));
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        });
+
+        return future;
+    }
+
+    private RenderStats renderProgressive(String _filename, PreviewListener _listener, RenderControl _control) throws IOException {
+        if (this.mode != Mode.PER_PIXEL) {
+            throw new IllegalStateException("Progressive rendering is only available in the PER_PIXEL mode.");
+        }
+
+        int width = this.getOutputWidth();
+        int height = this.getOutputHeight();
+
+        long seed = this.getNoiseSeed();
+        ForkJoinPool pool = this.workspace.getPool(this.parallelism);
+        RegionRenderer.Trace trace = this.getTrace();
+        RegionRenderer.Blur blur = this.getBlur();
+
+        return ProgressiveRenderer.render(
+                width, height, this.previewSize, this.lowPassFilterLength,
+                (this.inputImage != null || this.inputTexture != null) ? this.readTexture(width, height) : null,
+                (level, w, h) -> (level == 0) ? this.makeWhiteNoise(w, h, seed, this.workspace.getTexture(w * h)) : ProgressiveRenderer.makeNoise(w, h, seed),
+                (this.flowField != null) ? this.getFlowSampler(width, height) : null,
+                (level, w, h) -> (level == 0) ? this.getFlowSampler(w, h) : this.getPreviewField(w, h),
+                this.workspace.getPreviewImage(width * height),
+                (w, h, length, texture, field, image, context) -> {
+                    DirtyRegion region = DirtyRegion.of(w, h, 0, 0, w, h);
+
+                    this.lowPassFilterLength = length;
+                    RegionRenderer.render(pool, this.workspace, w, h, texture, field, image, region, region, trace, blur, context);
+                },
+                _filename, _listener, _control
+        );
+    }
+
+    private FastLICBuilder snapshot() {
+        try {
+            FastLICBuilder copy = (FastLICBuilder) super.clone();
+
+            copy.workspace = this.workspace.getBackgroundWorkspace();
+            copy.progressive = null;
+
+            return copy;
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private FlowSampler getPreviewField(int _width, int _height) {
+        if (this.lazyFlowField) {
+            return new AnalyticFlowSampler(_width, _height, this.flowFieldType);
+        }
+
+        FlowField vectors = FlowField.generateFlowField(_width, _height, this.flowFieldType);
         this.normalizeVectors(vectors);
-        this.flowImagingLIC(width, height, vectors, inputTexture, outputImage, lut0, lut1);
-        this.applyGaussianBlur(width, height, outputImage, 3, 1.0f);
 
-        ImageUtils.writeByteArrayToJPG(width, height, outputImage, _filename);
+        return vectors;
     }
 
-    private byte[] makeWhiteNoise(int _width, int _height) {
-        byte[] whiteNoise = new byte[_width * _height];
-        Random rand = new Random();
+    public RenderStats generateChannels(String _filename) throws IOException {
+        int width = this.getOutputWidth();
+        int height = this.getOutputHeight();
+        BlockLayout layout = this.getBlockLayout(width, height);
+
+        return ChannelRenderer.render(
+                this.workspace.getPool(this.parallelism), this.workspace,
+                width, height, layout,
+                this::readChannels, (w, h) -> this.toLayout(this.getFlowSampler(w, h), layout),
+                this.getTrace(), this.getBlur(),
+                _filename
+        );
+    }
 
-        for (int j = 0; j < _height; j++) {
-            for (int i = 0; i < _width; i++) {
-                int randomValue = rand.nextInt();
+    private byte[][] readChannels(int _width, int _height) throws IOException {
+        if (this.inputImage != null) {
+            return ImageUtils.readImageChannels(this.inputImage);
+        }
+
+        // A texture source is a single gray plane, so it renders as one channel.
+        if (this.inputTexture != null) {
+            byte[] plane = this.workspace.getChannelPlanes(1, _width * _height)[0];
+
+            this.inputTexture.read(0, 0, _width, _height, plane);
+            return new byte[][]{plane};
+        }
+
+        byte[][] planes = new byte[this.noiseChannels][];
+        byte[][] scratch = this.workspace.getChannelPlanes(planes.length, _width * _height);
+        long seed = this.getNoiseSeed();
+
+        for (int c = 0; c < planes.length; c++) {
+            planes[c] = this.makeWhiteNoise(_width, _height, NoiseTexture.layerSeed(seed, c), scratch[c]);
+        }
+
+        return planes;
+    }
+
+    public ConvolutionPlan buildConvolutionPlan() {
+        if (this.mode != Mode.PER_PIXEL) {
+            throw new IllegalStateException("Convolution plans are only available in the PER_PIXEL mode.");
+        }
+
+        int width = this.getOutputWidth();
+        int height = this.getOutputHeight();
+
+        this.convolutionPlan = this.buildConvolutionPlan(width, height);
+        return this.convolutionPlan;
+    }
+
+    private ConvolutionPlan resolveConvolutionPlan(int _width, int _height) {
+        ConvolutionPlan plan = this.convolutionPlan;
 
-                randomValue = ((randomValue & 0xff) + ((randomValue & 0xff00) >> 8)) & 0xff;
-                whiteNoise[j * _width + i] = (byte) randomValue;
+        if (this.mode != Mode.PER_PIXEL && (plan != null || this.planCaching)) {
+            throw new IllegalStateException("Convolution plans are only available in the PER_PIXEL mode.");
+        }
+
+        if (this.planCaching && (plan == null || plan.getWidth() != _width || plan.getHeight() != _height)) {
+            plan = this.buildConvolutionPlan(_width, _height);
+            this.convolutionPlan = plan;
+        }
+
+        if (plan != null && (plan.getWidth() != _width || plan.getHeight() != _height)) {
+            throw new IllegalArgumentException("Convolution plan size " + plan.getWidth() + "x" + plan.getHeight()
+                    + " does not match the input image size " + _width + "x" + _height + ".");
+        }
+
+        return plan;
+    }
+
+    // The PLAN stage times the build, but its trace counters stay out of the render's stats.
+    private ConvolutionPlan buildConvolutionPlan(int _width, int _height) {
+        FlowSampler field = this.getFlowSampler(_width, _height);
+        byte[] texture = this.workspace.getTexture(_width * _height);
+        byte[] image = this.workspace.getOutputImage(_width * _height);
+        float[] lut = this.workspace.getBoxFilterLUT(this.discreteFilterSize);
+        ForkJoinPool pool = this.workspace.getPool(this.parallelism);
+        List<ConvolutionPlan.Recorder> recorders = new ArrayList<>();
+
+        TileExecutor.execute(pool, _width, _height, TileExecutor.DEFAULT_TILE_SIZE, (x0, y0, x1, y1) -> {
+            ConvolutionPlan.Recorder recorder = new ConvolutionPlan.Recorder(x0, y0, x1, y1);
+            this.flowImagingLIC(_width, _height, field, texture, image, 0, lut, lut, x0, y0, x1, y1, recorder, RenderContext.NONE);
+
+            synchronized (recorders) {
+                recorders.add(recorder);
+            }
+        });
+
+        return ConvolutionPlan.assemble(_width, _height, recorders);
+    }
+
+    private FlowSampler getFlowSampler(int _width, int _height) {
+        FlowSampler field = (this.flowField != null) ? this.flowField
+                : this.lazyFlowField ? new AnalyticFlowSampler(_width, _height, this.flowFieldType)
+                : this.compactFlowField ? this.getCompactFlowField(_width, _height)
+                : this.getAnalyticFlowField(_width, _height);
+
+        if (field.getWidth() != _width || field.getHeight() != _height) {
+            throw new IllegalArgumentException("Flow field size " + field.getWidth() + "x" + field.getHeight()
+                    + " does not match the input image size " + _width + "x" + _height + ".");
+        }
+
+        return field;
+    }
+
+    public void generateAnimation(String _pattern, int _frames) throws IOException {
+        int width = this.getOutputWidth();
+        int height = this.getOutputHeight();
+        byte[] inputTexture = this.readTexture(width, height);
+
+        ForkJoinPool pool = this.workspace.getPool(this.parallelism);
+        AnimationPlan plan = this.buildAnimationPlan(width, height);
+
+        AnimationRenderer.render(
+                pool, this.workspace, plan, inputTexture,
+                this.discreteFilterSize, Math.max(1, _frames),
+                (w, h, image) -> this.applyBlur(w, h, image, this.workspace, null),
+                _pattern
+        );
+    }
+
+    private AnimationPlan buildAnimationPlan(int _width, int _height) {
+        FlowSampler field = this.getFlowSampler(_width, _height);
+        byte[] texture = this.workspace.getTexture(_width * _height);
+        byte[] image = this.workspace.getOutputImage(_width * _height);
+        float[] lut = this.workspace.getBoxFilterLUT(this.discreteFilterSize);
+        ForkJoinPool pool = this.workspace.getPool(this.parallelism);
+        List<AnimationPlan.Recorder> recorders = new ArrayList<>();
+
+        TileExecutor.execute(pool, _width, _height, TileExecutor.DEFAULT_TILE_SIZE, (x0, y0, x1, y1) -> {
+            AnimationPlan.Recorder recorder = new AnimationPlan.Recorder(x0, y0, x1, y1);
+            this.flowImagingLIC(_width, _height, field, texture, image, 0, lut, lut, x0, y0, x1, y1, recorder, RenderContext.NONE);
+
+            synchronized (recorders) {
+                recorders.add(recorder);
             }
+        });
+
+        return AnimationPlan.assemble(_width, _height, recorders);
+    }
+
+    public void generateTiled(String _filename, int _tileSize) throws IOException {
+        TextureSource texture = this.getTextureSource();
+
+        int width = texture.getWidth();
+        int height = texture.getHeight();
+
+        if (this.flowField != null && (this.flowField.getWidth() != width || this.flowField.getHeight() != height)) {
+            throw new IllegalArgumentException("Flow field size " + this.flowField.getWidth() + "x" + this.flowField.getHeight()
+                    + " does not match the input texture size " + width + "x" + height + ".");
+        }
+
+        int halo = (int) Math.ceil(this.lowPassFilterLength) + 2 + this.getBlurExtent();
+        float[] lut = this.workspace.getBoxFilterLUT(this.discreteFilterSize);
+        ForkJoinPool pool = this.workspace.getPool(this.parallelism);
+
+        TiledRenderer.render(
+                pool, width, height, _tileSize, halo,
+                (x0, y0, w, h) -> this.loadFieldWindow(width, height, x0, y0, w, h),
+                texture,
+                (w, h, field, tex, image, workspace) -> {
+                    if (this.mode == Mode.STREAMLINE) {
+                        this.streamlineLIC(w, h, field, tex, image, workspace, RenderContext.NONE);
+                    } else {
+                        this.flowImagingLIC(w, h, field, tex, image, 0, lut, lut, 0, 0, w, h, null, RenderContext.NONE);
+                    }
+
+                    this.applyBlur(w, h, image, workspace, null);
+                },
+                ImageUtils.getOutputFile(_filename)
+        );
+    }
+
+    private TextureSource getTextureSource() {
+        if (this.inputTexture != null) {
+            return this.inputTexture;
+        }
+
+        if (this.inputImage != null) {
+            return new ImageTexture(this.inputImage);
+        }
+
+        return new NoiseTexture(this.getOutputWidth(), this.getOutputHeight(), this.getNoiseSeed());
+    }
+
+    private FlowSampler loadFieldWindow(int _width, int _height, int _x0, int _y0, int _windowWidth, int _windowHeight) {
+        if (this.flowField != null) {
+            return FlowField.copyWindow(this.flowField, _x0, _y0, _windowWidth, _windowHeight);
+        }
+
+        if (this.lazyFlowField) {
+            return new AnalyticFlowSampler(_width, _height, _x0, _y0, _windowWidth, _windowHeight, this.flowFieldType);
+        }
+
+        FlowField window = FlowField.generateFlowField(_width, _height, _x0, _y0, _windowWidth, _windowHeight, this.flowFieldType);
+        this.normalizeVectors(window);
+
+        return window;
+    }
+
+    private BlockLayout getBlockLayout(int _width, int _height) {
+        return this.blockedLayout ? this.workspace.getBlockLayout(_width, _height) : null;
+    }
+
+    private FlowSampler toLayout(FlowSampler _field, BlockLayout _layout) {
+        if (_layout == null || !(_field instanceof FlowField)) {
+            return _field;
+        }
+
+        BlockedFlowField blocked = this.workspace.getBlockedFlowField(_field);
+
+        if (blocked == null) {
+            blocked = new BlockedFlowField(_field, _layout);
+            this.workspace.setBlockedFlowField(_field, blocked);
         }
 
-        return whiteNoise;
+        return blocked;
+    }
+
+    private long getNoiseSeed() {
+        return (this.noiseSeed != null) ? this.noiseSeed : ThreadLocalRandom.current().nextLong();
     }
 
-    private void normalizeVectors(Vector2D[] _vectors) {
-        for (Vector2D vec : _vectors) {
-            vec.normalize();
+    private byte[] makeWhiteNoise(int _width, int _height, long _seed, byte[] _whiteNoise) {
+        byte[] cached = (this.noiseSeed != null) ? this.workspace.getNoise(_width, _height, _seed) : null;
+
+        if (cached != null) {
+            return cached;
         }
+
+        NoiseTexture texture = new NoiseTexture(_width, _height, _seed);
+        ForkJoinPool pool = this.workspace.getPool(this.parallelism);
+        byte[] noise = (this.noiseSeed != null) ? new byte[_width * _height] : _whiteNoise;
+
+        TileExecutor.execute(pool, _width, _height, TileExecutor.DEFAULT_TILE_SIZE, (x0, y0, x1, y1) ->
+                texture.fill(noise, x0, y0, x1, y1)
+        );
+
+        if (this.noiseSeed != null) {
+            this.workspace.setNoise(_width, _height, _seed, noise);
+        }
+
+        return noise;
     }
 
-    private float[] generateBoxFilterLUT() {
-        float[] lut = new float[this.discreteFilterSize];
+    private FlowField getAnalyticFlowField(int _width, int _height) {
+        FlowField vectors = this.workspace.getFlowField(_width, _height, this.flowFieldType);
 
-        for (int i = 0; i < this.discreteFilterSize; i++) {
-            lut[i] = i;
+        if (vectors == null) {
+            vectors = FlowField.generateFlowField(_width, _height, this.flowFieldType);
+            this.normalizeVectors(vectors);
+            this.workspace.setFlowField(this.flowFieldType, vectors);
         }
 
-        return lut;
+        return vectors;
+    }
+
+    private AngleFlowField getCompactFlowField(int _width, int _height) {
+        AngleFlowField vectors = this.workspace.getCompactFlowField(_width, _height, this.flowFieldType);
+
+        if (vectors == null) {
+            vectors = AngleFlowField.generate(_width, _height, this.flowFieldType);
+            this.workspace.setCompactFlowField(this.flowFieldType, vectors);
+        }
+
+        return vectors;
+    }
+
+    void normalizeVectors(FlowField _vectors) {
+        _vectors.normalize();
     }
 
-    private void flowImagingLIC(
+    void flowImagingLIC(
             int _width, int _height,
-            Vector2D[] _vectors,
-            byte[] _noise, byte[] _image,
-            float[] _lut0, float[] _lut1
+            FlowSampler _vectors,
+            byte[] _noise, byte[] _image, int _imageOffset,
+            float[] _lut0, float[] _lut1,
+            int _x0, int _y0, int _x1, int _y1,
+            SampleRecorder _recorder, RenderContext _context
     ) {
-        int advectsMax = (int) (this.lowPassFilterLength * 3);
-        float len2ID = (this.discreteFilterSize - 1) / this.lowPassFilterLength;
+        LICTracer tracer = this.workspace.getTracer();
+
+        try {
+            tracer.configure(this.lowPassFilterLength, this.discreteFilterSize, this.lineSquareClipMax, this.vectorComponentMinimum,
+                            this.integrationMethod, this.integrationStep, this.integrationTolerance)
+                    .trace(_width, _height, _vectors, _noise, _image, _imageOffset, _lut0, _lut1, _x0, _y0, _x1, _y1, _recorder, _context);
+        } finally {
+            this.workspace.putTracer(tracer);
+        }
+    }
 
-        for (int j = 0; j < _height; j++) {
-            for (int i = 0; i < _width; i++) {
+    private RegionRenderer.Trace getTrace() {
+        float[] lut = this.workspace.getBoxFilterLUT(this.discreteFilterSize);
 
-                float[] textureAccum = new float[2];
-                float[] weightAccum = new float[2];
+        return (w, h, field, texture, image, offset, x0, y0, x1, y1, recorder, context) ->
+                this.flowImagingLIC(w, h, field, texture, image, offset, lut, lut, x0, y0, x1, y1, recorder, context);
+    }
 
-                for (int dir = 0; dir < 2; dir++) {
-                    int advects = 0;
-                    float currentLength = 0.0f;
+    void streamlineLIC(int _width, int _height, FlowSampler _vectors, byte[] _noise, byte[] _image, LICWorkspace _workspace, RenderContext _context) {
+        int kernelSteps = Math.max(1, Math.round(this.lowPassFilterLength / STREAMLINE_STEP));
+        int extensionSteps = Math.max(0, Math.round(Math.max(this.streamlineLength, this.lowPassFilterLength) / STREAMLINE_STEP));
+        int halfSteps = kernelSteps + extensionSteps;
+        int center = halfSteps;
+
+        float[] vec = _workspace.getStreamlineVector();
+
+        int size = _width * _height;
+        int bins = 2 * halfSteps + 1;
+        int[] pixels = _workspace.getStreamlinePixels(bins);
+        float[] samples = _workspace.getStreamlineSamples(bins);
+        float[] accum = _workspace.getHitAccum(size);
+        int[] hits = _workspace.getHitCount(size);
+
+        RenderStats stats = _context.stats;
+        RenderControl control = _context.control;
+        int[] histogram = (stats != null) ? _workspace.getStreamlineHistogram(bins) : null;
+        long advections = 0;
+        long earlyTerminations = 0;
+        long zeroVectorHits = 0;
+
+        Arrays.fill(accum, 0, size, 0.0f);
+        Arrays.fill(hits, 0, size, 0);
+
+        if (histogram != null) {
+            Arrays.fill(histogram, 0, bins, 0);
+        }
 
-                    float x = i + 0.5f;
-                    float y = j + 0.5f;
-                    float[] weightLUT = (dir == 0) ? _lut0 : _lut1;
+        for (int j = 0; j < _height; j++) {
+            if (control != null) {
+                control.checkpoint();
+                control.advance(RenderStats.Stage.TRACE, _width, size);
+            }
 
-                    while (currentLength < this.lowPassFilterLength && advects < advectsMax) {
-                        int vecIdx = ((int) y) * _width + (int) x;
-                        Vector2D vec = _vectors[vecIdx];
+            for (int i = 0; i < _width; i++) {
+                int seed = j * _width + i;
 
-                        float vx = vec.getX();
-                        float vy = vec.getY();
+                if (hits[seed] >= this.minimumHits) {
+                    continue;
+                }
 
-                        if (vx == 0 && vy == 0) {
-                            if (advects == 0) {
-                                textureAccum[dir] = 0;
-                                weightAccum[dir] = 1;
-                            }
-                            break;
-                        }
+                _vectors.sample(i, j, vec);
 
-                        vx = (dir == 0) ? vx : -vx;
-                        vy = (dir == 0) ? vy : -vy;
+                if (vec[0] == 0 && vec[1] == 0) {
+                    zeroVectorHits++;
+                    hits[seed]++;
+                    continue;
+                }
 
-                        float segmentLength = this.lineSquareClipMax;
+                pixels[center] = seed;
+                samples[center] = Byte.toUnsignedInt(_noise[seed]);
 
-                        if (vx < -this.vectorComponentMinimum) {
-                            segmentLength = (int) x - x / vx;
-                        }
+                // A trace leaves its last sample in vec, so a zero vector there means it stopped at a critical point.
+                int forward = this.traceStreamline(_width, _height, _vectors, vec, _noise, i + 0.5f, j + 0.5f, 1.0f, halfSteps, pixels, samples, center);
+                zeroVectorHits += (vec[0] == 0 && vec[1] == 0) ? 1 : 0;
 
-                        if (vx > this.vectorComponentMinimum) {
-                            segmentLength = Math.min(segmentLength, ((int) (x + 1.5f) - x) / vx);
-                        }
+                int backward = this.traceStreamline(_width, _height, _vectors, vec, _noise, i + 0.5f, j + 0.5f, -1.0f, halfSteps, pixels, samples, center);
+                zeroVectorHits += (vec[0] == 0 && vec[1] == 0) ? 1 : 0;
 
-                        if (vy < -this.vectorComponentMinimum) {
-                            segmentLength = Math.min(segmentLength, ((int) y - y) / vy);
-                        }
+                advections += forward + backward;
+                earlyTerminations += ((forward < kernelSteps) ? 1 : 0) + ((backward < kernelSteps) ? 1 : 0);
 
-                        if (vy > this.vectorComponentMinimum) {
-                            segmentLength = Math.min(segmentLength, ((int) (y + 1.5f) - y) / vy);
-                        }
+                if (histogram != null) {
+                    histogram[forward + backward]++;
+                }
 
-                        float previousLength = currentLength;
-                        currentLength += segmentLength;
-                        segmentLength += 0.0004f;
+                int hi = center + forward;
+                int lo = center - backward;
 
-                        if (currentLength > this.lowPassFilterLength) {
-                            segmentLength = this.lowPassFilterLength - previousLength;
-                            currentLength = this.lowPassFilterLength;
-                        }
+                int first = Math.max(lo, center - extensionSteps);
+                int last = Math.min(hi, center + extensionSteps);
 
-                        float x1 = x + vx * segmentLength;
-                        float y1 = y + vy * segmentLength;
+                float sum = 0.0f;
+                int count = 0;
 
-                        float sx = (x + x1) * 0.5f;
-                        float sy = (y + y1) * 0.5f;
+                for (int k = Math.max(lo, first - kernelSteps); k <= Math.min(hi, first + kernelSteps); k++) {
+                    sum += samples[k];
+                    count++;
+                }
 
-                        int texIdx = ((int) sy) * _width + (int) sx;
-                        texIdx = Math.max(0, Math.min(texIdx, _noise.length - 1));
-                        float texVal = Byte.toUnsignedInt(_noise[texIdx]);
+                for (int k = first; k <= last; k++) {
+                    int pixel = pixels[k];
 
-                        float weightAcc = weightLUT[(int) (currentLength * len2ID)];
-                        float sampleWeight = weightAcc - weightAccum[dir];
+                    accum[pixel] += sum / count;
+                    hits[pixel]++;
 
-                        weightAccum[dir] = weightAcc;
-                        textureAccum[dir] += texVal * sampleWeight;
+                    int incoming = k + kernelSteps + 1;
+                    int outgoing = k - kernelSteps;
 
-                        advects++;
-                        x = x1;
-                        y = y1;
+                    if (incoming <= hi) {
+                        sum += samples[incoming];
+                        count++;
+                    }
 
-                        if (x < 0 || x >= _width || y < 0 || y >= _height) break;
+                    if (outgoing >= lo) {
+                        sum -= samples[outgoing];
+                        count--;
                     }
                 }
+            }
+        }
+
+        for (int k = 0; k < size; k++) {
+            float texVal = (hits[k] > 0) ? accum[k] / hits[k] : 0.0f;
+            texVal = Math.max(0.0f, Math.min(255.0f, texVal));
+
+            _image[k] = (byte) texVal;
+        }
+
+        if (stats != null) {
+            stats.addTrace(size, advections, earlyTerminations, zeroVectorHits, histogram, bins);
+        }
+    }
 
-                float texVal = (textureAccum[0] + textureAccum[1]) / (weightAccum[0] + weightAccum[1]);
-                texVal = Math.max(0.0f, Math.min(255.0f, texVal));
+    private int traceStreamline(
+            int _width, int _height,
+            FlowSampler _vectors, float[] _vec,
+            byte[] _noise,
+            float _x, float _y, float _direction,
+            int _maxSteps,
+            int[] _pixels, float[] _samples, int _center
+    ) {
+        float x = _x;
+        float y = _y;
+
+        for (int step = 1; step <= _maxSteps; step++) {
+            _vectors.sample((int) x, (int) y, _vec);
+
+            float vx = _vec[0] * _direction;
+            float vy = _vec[1] * _direction;
+
+            if (vx == 0 && vy == 0) {
+                return step - 1;
+            }
 
-                _image[j * _width + i] = (byte) texVal;
+            x += vx * STREAMLINE_STEP;
+            y += vy * STREAMLINE_STEP;
+
+            if (x < 0 || x >= _width || y < 0 || y >= _height) {
+                return step - 1;
             }
+
+            int slot = _center + (int) _direction * step;
+            int pixel = ((int) y) * _width + (int) x;
+
+            _pixels[slot] = pixel;
+            _samples[slot] = Byte.toUnsignedInt(_noise[pixel]);
         }
+
+        return _maxSteps;
     }
 
-    private void applyGaussianBlur(int _width, int _height, byte[] _image, int _kernelRadius, float _sigma) {
-        float[] kernel = createGaussianKernel(_kernelRadius, _sigma);
-        byte[] temp = new byte[_width * _height];
+    private void applyBlur(int _width, int _height, byte[] _image, LICWorkspace _workspace, RenderControl _control) {
+        switch (this.blurMode) {
+            case GAUSSIAN -> this.applyGaussianBlur(_width, _height, _image, this.blurRadius, this.blurSigma, _workspace, _control);
+            case BOX_CASCADE -> this.applyBoxBlur(_width, _height, _image, this.blurSigma, _workspace, _control);
+            case NONE -> {
+            }
+        }
+    }
+
+    private RegionRenderer.Blur getBlur() {
+        return (this.blurMode != BlurMode.NONE) ? this::applyBlur : null;
+    }
+
+    private int getBlurExtent() {
+        return switch (this.blurMode) {
+            case GAUSSIAN -> this.blurRadius;
+            case BOX_CASCADE -> Arrays.stream(createBoxRadii(this.blurSigma, BOX_PASSES)).sum();
+            case NONE -> 0;
+        };
+    }
+
+    void applyGaussianBlur(int _width, int _height, byte[] _image, int _kernelRadius, float _sigma, LICWorkspace _workspace, RenderControl _control) {
+        float[] kernel = this.getGaussianKernel(_kernelRadius, _sigma, _workspace);
+        byte[] temp = _workspace.getBlurBuffer(_width * _height);
+
+        Kernels kernels = Kernels.get();
+        float weightSum = 0;
+
+        for (float weight : kernel) {
+            weightSum += weight;
+        }
+
+        int[] rowOffsets = _workspace.getBlurOffsets(kernel.length);
 
         for (int y = 0; y < _height; y++) {
-            for (int x = 0; x < _width; x++) {
-                float sum = 0;
-                float weightSum = 0;
+            if (_control != null) {
+                _control.checkpoint();
+            }
 
-                for (int k = -_kernelRadius; k <= _kernelRadius; k++) {
-                    int px = Math.min(Math.max(x + k, 0), _width - 1);
-                    float weight = kernel[k + _kernelRadius];
+            kernels.convolveRow(_image, y * _width, temp, y * _width, _width, kernel, weightSum);
+        }
 
-                    sum += Byte.toUnsignedInt(_image[y * _width + px]) * weight;
-                    weightSum += weight;
-                }
+        if (_control != null) {
+            _control.advance(RenderStats.Stage.BLUR, _height, 2L * _height);
+        }
 
-                temp[y * _width + x] = (byte) (sum / weightSum);
+        for (int y = 0; y < _height; y++) {
+            if (_control != null) {
+                _control.checkpoint();
             }
+
+            for (int k = -_kernelRadius; k <= _kernelRadius; k++) {
+                rowOffsets[k + _kernelRadius] = Math.min(Math.max(y + k, 0), _height - 1) * _width;
+            }
+
+            kernels.convolveColumn(temp, rowOffsets, _image, y * _width, _width, kernel, weightSum);
         }
 
+        if (_control != null) {
+            _control.advance(RenderStats.Stage.BLUR, _height, 2L * _height);
+        }
+    }
+
+    void applyBoxBlur(int _width, int _height, byte[] _image, float _sigma, LICWorkspace _workspace, RenderControl _control) {
+        int[] radii = createBoxRadii(_sigma, BOX_PASSES);
+        int maxRadius = radii[radii.length - 1];
+        int padded = _width + 2 * maxRadius + 1;
+
+        float[] pixels = _workspace.getBlurImage(_width * _height);
+        float[] line = _workspace.getBlurLine(2 * padded);
+        float[] rows = _workspace.getBlurRows((maxRadius + 2) * _width);
+
         for (int y = 0; y < _height; y++) {
+            int row = y * _width;
+
+            if (_control != null) {
+                _control.checkpoint();
+            }
+
             for (int x = 0; x < _width; x++) {
-                float sum = 0;
-                float weightSum = 0;
+                line[x] = Byte.toUnsignedInt(_image[row + x]);
+            }
 
-                for (int k = -_kernelRadius; k <= _kernelRadius; k++) {
-                    int py = Math.min(Math.max(y + k, 0), _height - 1);
-                    float weight = kernel[k + _kernelRadius];
+            for (int radius : radii) {
+                boxFilterLine(line, _width, radius, padded);
+            }
 
-                    sum += Byte.toUnsignedInt(temp[py * _width + x]) * weight;
-                    weightSum += weight;
-                }
+            System.arraycopy(line, 0, pixels, row, _width);
+        }
+
+        for (int radius : radii) {
+            if (_control != null) {
+                _control.checkpoint();
+            }
 
-                _image[y * _width + x] = (byte) (sum / weightSum);
+            boxFilterColumns(pixels, _width, _height, radius, rows);
+        }
+
+        if (_control != null) {
+            _control.advance(RenderStats.Stage.BLUR, 1, 1);
+        }
+
+        for (int k = 0; k < _width * _height; k++) {
+            _image[k] = (byte) Math.min(255, (int) (pixels[k] + 0.5f));
+        }
+    }
+
+    private static void boxFilterLine(float[] _line, int _width, int _radius, int _offset) {
+        float first = _line[0];
+        float last = _line[_width - 1];
+        int window = 2 * _radius + 1;
+
+        Arrays.fill(_line, _offset, _offset + _radius, first);
+        System.arraycopy(_line, 0, _line, _offset + _radius, _width);
+        Arrays.fill(_line, _offset + _radius + _width, _offset + window + _width, last);
+
+        float sum = 0;
+
+        for (int k = 0; k < window; k++) {
+            sum += _line[_offset + k];
+        }
+
+        float scale = 1.0f / window;
+
+        for (int x = 0; x < _width; x++) {
+            _line[x] = sum * scale;
+            sum += _line[_offset + x + window] - _line[_offset + x];
+        }
+    }
+
+    private static void boxFilterColumns(float[] _pixels, int _width, int _height, int _radius, float[] _rows) {
+        int ringSize = _radius + 1;
+        int sums = ringSize * _width;
+        float scale = 1.0f / (2 * _radius + 1);
+
+        for (int x = 0; x < _width; x++) {
+            _rows[sums + x] = (_radius + 1) * _pixels[x];
+        }
+
+        for (int k = 1; k <= _radius; k++) {
+            int row = Math.min(k, _height - 1) * _width;
+
+            for (int x = 0; x < _width; x++) {
+                _rows[sums + x] += _pixels[row + x];
             }
         }
+
+        for (int y = 0; y < _height; y++) {
+            int row = y * _width;
+            int add = Math.min(y + _radius + 1, _height - 1);
+            int sub = (Math.max(y - _radius, 0) % ringSize) * _width;
+
+            System.arraycopy(_pixels, row, _rows, (y % ringSize) * _width, _width);
+
+            float[] addSource = (add > y) ? _pixels : _rows;
+            int addRow = (add > y) ? add * _width : (add % ringSize) * _width;
+
+            for (int x = 0; x < _width; x++) {
+                _pixels[row + x] = _rows[sums + x] * scale;
+                _rows[sums + x] += addSource[addRow + x] - _rows[sub + x];
+            }
+        }
+    }
+
+    static int[] createBoxRadii(float _sigma, int _passes) {
+        double variance = 12.0 * _sigma * _sigma;
+        int lower = (int) Math.floor(Math.sqrt(variance / _passes + 1.0));
+
+        if (lower % 2 == 0) {
+            lower--;
+        }
+
+        lower = Math.max(1, lower);
+
+        int upper = lower + 2;
+        int count = (int) Math.round((variance - _passes * lower * lower - 4.0 * _passes * lower - 3.0 * _passes) / (-4.0 * lower - 4.0));
+        int[] radii = new int[_passes];
+
+        for (int i = 0; i < _passes; i++) {
+            radii[i] = ((i < count) ? lower - 1 : upper - 1) / 2;
+        }
+
+        return radii;
+    }
+
+    private float[] getGaussianKernel(int _radius, float _sigma, LICWorkspace _workspace) {
+        float[] kernel = _workspace.getGaussianKernel(_radius, _sigma);
+
+        if (kernel == null) {
+            kernel = createGaussianKernel(_radius, _sigma);
+            _workspace.setGaussianKernel(_radius, _sigma, kernel);
+        }
+
+        return kernel;
     }
 
     private float[] createGaussianKernel(int _radius, float _sigma) {
@@ -0,0 +1,52 @@
+package org.carzuiliam.fastlic.builder;
+
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+class Futures {
+
+    static void await(Future<?> _future) throws IOException {
+        if (_future == null) {
+            return;
+        }
+
+        try {
+            _future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while encoding output.", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException cause) {
+                throw cause;
+            }
+
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    // Waits for a task that may still be reading workspace buffers, ignoring its outcome.
+    static void drain(Future<?> _future) {
+        if (_future == null) {
+            return;
+        }
+
+        boolean interrupted = false;
+
+        while (true) {
+            try {
+                _future.get();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            } catch (ExecutionException | CancellationException e) {
+                break;
+            }
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
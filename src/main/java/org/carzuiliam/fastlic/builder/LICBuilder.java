@@ -1,17 +1,36 @@
 package org.carzuiliam.fastlic.builder;
 
+import org.carzuiliam.fastlic.utils.AnalyticFlowSampler;
+import org.carzuiliam.fastlic.utils.AngleFlowField;
+import org.carzuiliam.fastlic.utils.AnimationPlan;
+import org.carzuiliam.fastlic.utils.BlockLayout;
+import org.carzuiliam.fastlic.utils.BlockedFlowField;
+import org.carzuiliam.fastlic.utils.ConvolutionPlan;
 import org.carzuiliam.fastlic.utils.FlowField;
+import org.carzuiliam.fastlic.utils.FlowSampler;
+import org.carzuiliam.fastlic.utils.ImageTexture;
 import org.carzuiliam.fastlic.utils.ImageUtils;
-import org.carzuiliam.fastlic.utils.Vector2D;
+import org.carzuiliam.fastlic.utils.MappedFlowField;
+import org.carzuiliam.fastlic.utils.NoiseTexture;
+import org.carzuiliam.fastlic.utils.SampleRecorder;
+import org.carzuiliam.fastlic.utils.StreamlineIntegrator;
+import org.carzuiliam.fastlic.utils.TextureSource;
+import org.carzuiliam.fastlic.utils.TileExecutor;
 
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Random;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
 
-public class LICBuilder {
+public class LICBuilder implements Cloneable {
 
     private FlowField.Type flowFieldType;
 
@@ -20,8 +39,25 @@ public class LICBuilder {
     private float lowPassFilterLength;
     private float lineSquareClipMax;
     private float vectorComponentMinimum;
+    private int parallelism;
 
     private BufferedImage inputImage;
+    private TextureSource inputTexture;
+    private FlowSampler flowField;
+    private ConvolutionPlan convolutionPlan;
+    private boolean planCaching;
+    private boolean lazyFlowField;
+    private boolean blockedLayout;
+    private boolean compactFlowField;
+    private int noiseChannels;
+    private int previewSize;
+    private Long noiseSeed;
+    private boolean noiseDump;
+    private StreamlineIntegrator.Method integrationMethod;
+    private float integrationStep;
+    private float integrationTolerance;
+    private LICWorkspace workspace;
+    private CompletableFuture<RenderStats> progressive;
 
     public LICBuilder() {
         this.flowFieldType = FlowField.Type.SADDLE;
@@ -30,40 +66,167 @@ public class LICBuilder {
         this.lowPassFilterLength = 10.0f;
         this.lineSquareClipMax = 100000.0f;
         this.vectorComponentMinimum = 0.05f;
+        this.parallelism = Runtime.getRuntime().availableProcessors();
         this.inputImage = null;
+        this.inputTexture = null;
+        this.flowField = null;
+        this.convolutionPlan = null;
+        this.planCaching = false;
+        this.lazyFlowField = false;
+        this.blockedLayout = false;
+        this.compactFlowField = false;
+        this.noiseChannels = 3;
+        this.previewSize = 128;
+        this.noiseSeed = null;
+        this.noiseDump = false;
+        this.integrationMethod = null;
+        this.integrationStep = 2.0f;
+        this.integrationTolerance = 0.01f;
+        this.workspace = new LICWorkspace();
     }
 
     public LICBuilder setFlowFieldType(FlowField.Type _type) {
         this.flowFieldType = _type;
+        this.convolutionPlan = null;
         return this;
     }
 
     public LICBuilder setSquareFlowFieldSize(int _value) {
         this.squareFlowFieldSize = _value;
+        this.convolutionPlan = null;
         return this;
     }
 
     public LICBuilder setDiscreteFilterSize(int _value) {
         this.discreteFilterSize = _value;
+        this.convolutionPlan = null;
         return this;
     }
 
     public LICBuilder setLowPassFilterLength(float _value) {
         this.lowPassFilterLength = _value;
+        this.convolutionPlan = null;
         return this;
     }
 
     public LICBuilder setLineSquareClipMax(float _value) {
         this.lineSquareClipMax = _value;
+        this.convolutionPlan = null;
         return this;
     }
 
     public LICBuilder setVectorComponentMinimum(float _value) {
         this.vectorComponentMinimum = _value;
+        this.convolutionPlan = null;
         return this;
     }
 
+    public LICBuilder setParallelism(int _value) {
+        this.parallelism = Math.max(1, _value);
+        return this;
+    }
+
+    public LICBuilder setWorkspace(LICWorkspace _workspace) {
+        this.workspace = _workspace;
+        return this;
+    }
+
+    public LICBuilder setFlowField(FlowSampler _flowField) {
+        // Setting the same field again means it was edited in place, so its blocked copy is stale.
+        if (_flowField == this.flowField) {
+            this.workspace.setBlockedFlowField(null, null);
+        }
+
+        this.flowField = _flowField;
+        this.convolutionPlan = null;
+        return this;
+    }
+
+    public LICBuilder setFlowFieldFile(String _filename) throws IOException {
+        this.flowField = (_filename != null) ? MappedFlowField.open(Path.of(_filename)) : null;
+        this.convolutionPlan = null;
+        return this;
+    }
+
+    public LICBuilder setInputTexture(TextureSource _texture) {
+        this.inputTexture = _texture;
+        this.convolutionPlan = null;
+        return this;
+    }
+
+    public LICBuilder setConvolutionPlan(ConvolutionPlan _plan) {
+        this.convolutionPlan = _plan;
+        return this;
+    }
+
+    public LICBuilder setPlanCaching(boolean _value) {
+        this.planCaching = _value;
+        return this;
+    }
+
+    public LICBuilder setLazyFlowField(boolean _value) {
+        this.lazyFlowField = _value;
+        this.convolutionPlan = null;
+        return this;
+    }
+
+    public LICBuilder setCompactFlowField(boolean _value) {
+        this.compactFlowField = _value;
+        this.convolutionPlan = null;
+        return this;
+    }
+
+    public LICBuilder setBlockedLayout(boolean _value) {
+        this.blockedLayout = _value;
+        this.convolutionPlan = null;
+        return this;
+    }
+
+    public LICBuilder setNoiseSeed(long _seed) {
+        this.noiseSeed = _seed;
+        return this;
+    }
+
+    public LICBuilder setNoiseDump(boolean _value) {
+        this.noiseDump = _value;
+        return this;
+    }
+
+    public LICBuilder setNoiseChannels(int _value) {
+        this.noiseChannels = Math.max(1, _value);
+        return this;
+    }
+
+    public LICBuilder setPreviewSize(int _value) {
+        this.previewSize = Math.max(1, _value);
+        return this;
+    }
+
+    public LICBuilder setIntegrator(StreamlineIntegrator.Method _method) {
+        this.integrationMethod = _method;
+        this.convolutionPlan = null;
+        return this;
+    }
+
+    public LICBuilder setIntegrationStep(float _value) {
+        this.integrationStep = _value;
+        this.convolutionPlan = null;
+        return this;
+    }
+
+    public LICBuilder setIntegrationTolerance(float _value) {
+        this.integrationTolerance = _value;
+        this.convolutionPlan = null;
+        return this;
+    }
+
+    public ConvolutionPlan getConvolutionPlan() {
+        return this.convolutionPlan;
+    }
+
     public LICBuilder setInputImage(String _resourceName) throws IOException {
+        this.convolutionPlan = null;
+
         if (_resourceName == null) {
             this.inputImage = null;
             return this;
@@ -79,163 +242,530 @@ public class LICBuilder {
         return this;
     }
 
-    public void generate(String _filename) throws IOException {
-        int width;
-        int height;
+    public RenderStats generate(String _filename) throws IOException {
+        return this.generate(_filename, null, null);
+    }
+
+    public RenderStats generate(OutputStream _output, String _format) throws IOException {
+        return this.generate(_format, _output, null);
+    }
+
+    private RenderStats generate(String _filename, OutputStream _output, RenderControl _control) throws IOException {
+        int width = this.getOutputWidth();
+        int height = this.getOutputHeight();
+
+        RenderStats stats = new RenderStats(width, height);
         byte[] inputTexture;
 
+        try (RenderStats.Timer ignored = stats.time(RenderStats.Stage.TEXTURE)) {
+            inputTexture = this.readTexture(width, height);
+        }
+
+        this.render(width, height, inputTexture, _filename, _output, new RenderContext(stats, _control, null));
+
+        stats.finish();
+        return stats;
+    }
+
+    private int getOutputWidth() {
+        return (this.inputImage != null) ? this.inputImage.getWidth()
+                : (this.inputTexture != null) ? this.inputTexture.getWidth()
+                : (this.flowField != null) ? this.flowField.getWidth() : this.squareFlowFieldSize;
+    }
+
+    private int getOutputHeight() {
+        return (this.inputImage != null) ? this.inputImage.getHeight()
+                : (this.inputTexture != null) ? this.inputTexture.getHeight()
+                : (this.flowField != null) ? this.flowField.getHeight() : this.squareFlowFieldSize;
+    }
+
+    private byte[] readTexture(int _width, int _height) throws IOException {
         if (this.inputImage != null) {
-            width = this.inputImage.getWidth();
-            height = this.inputImage.getHeight();
-            inputTexture = ImageUtils.readImageToByteArray(this.inputImage);
-        } else {
-            width = this.squareFlowFieldSize;
-            height = this.squareFlowFieldSize;
-            inputTexture = this.makeWhiteNoise(width, height);
+            return ImageUtils.readImageToByteArray(this.inputImage, this.workspace.getTexture(_width * _height));
+        }
+
+        if (this.inputTexture != null) {
+            byte[] texture = this.workspace.getTexture(_width * _height);
 
-            ImageUtils.writeByteArrayToJPG(width, height, inputTexture, "noise.jpg");
+            this.inputTexture.read(0, 0, _width, _height, texture);
+            return texture;
         }
 
-        byte[] outputImage = new byte[width * height];
-        float[] lut0 = this.generateBoxFilterLUT();
-        float[] lut1 = this.generateBoxFilterLUT();
-        Vector2D[] vectors = FlowField.generateFlowField(width, height, this.flowFieldType);
+        byte[] noise = this.makeWhiteNoise(_width, _height, this.getNoiseSeed(), this.workspace.getTexture(_width * _height));
 
-        this.normalizeVectors(vectors);
-        this.flowImagingLIC(width, height, vectors, inputTexture, outputImage, lut0, lut1);
+        if (this.noiseDump) {
+            ImageUtils.writeByteArrayToJPG(_width, _height, noise, "noise.jpg");
+        }
+
+        return noise;
+    }
+
+    private byte[] readTexture(int _width, int _height, int _x0, int _y0, int _x1, int _y1) throws IOException {
+        Object source = (this.inputImage != null) ? this.inputImage : this.inputTexture;
+
+        if (source == null) {
+            return this.readTexture(_width, _height);
+        }
+
+        TextureSource input = this.getTextureSource();
+        byte[] texture = this.workspace.getInputTexture(source);
+
+        if (texture == null) {
+            texture = this.workspace.resetInputTexture(source, _width * _height);
+            input.read(0, 0, _width, _height, texture);
+            return texture;
+        }
 
-        ImageUtils.writeByteArrayToJPG(width, height, outputImage, _filename);
+        int regionWidth = _x1 - _x0;
+        int regionHeight = _y1 - _y0;
+        byte[] region = this.workspace.getWindowImage(regionWidth * regionHeight);
+
+        input.read(_x0, _y0, regionWidth, regionHeight, region);
+
+        for (int y = 0; y < regionHeight; y++) {
+            System.arraycopy(region, y * regionWidth, texture, (_y0 + y) * _width + _x0, regionWidth);
+        }
+
+        return texture;
     }
 
-    private byte[] makeWhiteNoise(int _width, int _height) {
-        byte[] whiteNoise = new byte[_width * _height];
-        Random rand = new Random();
+    private void render(int _width, int _height, byte[] _texture, String _filename, OutputStream _output, RenderContext _context) throws IOException {
+        RenderStats stats = _context.stats;
+        float[] lut = this.workspace.getBoxFilterLUT(this.discreteFilterSize);
+        ForkJoinPool pool = this.workspace.getPool(this.parallelism);
+        ConvolutionPlan plan;
+
+        try (RenderStats.Timer ignored = stats.time(RenderStats.Stage.PLAN)) {
+            plan = this.resolveConvolutionPlan(_width, _height);
+        }
 
-        for (int j = 0; j < _height; j++) {
-            for (int i = 0; i < _width; i++) {
-                int randomValue = rand.nextInt();
+        if (plan != null) {
+            byte[] outputImage = this.workspace.getOutputImage(_width * _height);
 
-                randomValue = ((randomValue & 0xff) + ((randomValue & 0xff00) >> 8)) & 0xff;
-                whiteNoise[j * _width + i] = (byte) randomValue;
+            try (RenderStats.Timer ignored = stats.time(RenderStats.Stage.TRACE)) {
+                TileExecutor.execute(pool, _width, _height, TileExecutor.DEFAULT_TILE_SIZE, (x0, y0, x1, y1) ->
+                        plan.apply(_texture, outputImage, x0, y0, x1, y1)
+                );
             }
+
+            try (RenderStats.Timer ignored = stats.time(RenderStats.Stage.ENCODE)) {
+                ImageUtils.writeByteArray(_width, _height, outputImage, _filename, _output);
+            }
+
+            return;
+        }
+
+        FlowSampler field;
+
+        try (RenderStats.Timer ignored = stats.time(RenderStats.Stage.FIELD)) {
+            field = this.getFlowSampler(_width, _height);
         }
 
-        return whiteNoise;
+        BlockLayout layout = this.getBlockLayout(_width, _height);
+        byte[] texture = (layout != null) ? layout.toBlocked(_texture, this.workspace.getBlockedTexture(layout.getSize())) : _texture;
+        FlowSampler vectors = this.toLayout(field, layout);
+        RenderContext context = _context.withLayout(layout);
+
+        StreamingRenderer.render(_width, _height, null, (y0, y1, band) ->
+                TileExecutor.execute(pool, _width, y1 - y0, TileExecutor.DEFAULT_TILE_SIZE, (x0, ty0, x1, ty1) ->
+                        this.flowImagingLIC(_width, _height, vectors, texture, band, y0 * _width, lut, lut, x0, y0 + ty0, x1, y0 + ty1, null, context)
+                ),
+                ImageUtils.openRowWriter(_width, _height, _filename, _output),
+                this.workspace, stats
+        );
     }
 
-    private void normalizeVectors(Vector2D[] _vectors) {
-        for (Vector2D vec : _vectors) {
-            vec.normalize();
+    public CompletableFuture<RenderStats> generateAsync(String _filename, ProgressListener _listener) {
+        CompletableFuture<RenderStats> future = new CompletableFuture<>();
+        LICBuilder snapshot = this.snapshot();
+
+        this.workspace.getRenderExecutor().execute(() -> {
+            if (future.isDone()) {
+                return;
+            }
+
+            try {
+                future.complete(snapshot.generate(_filename, null, new RenderControl(future, _listener)));
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        });
+
+        return future;
+    }
+
+    public RenderStats generateIncremental(byte[] _image, int _x0, int _y0, int _x1, int _y1) throws IOException {
+        // Fresh noise would change every pixel, so a noise input must come from a fixed seed.
+        if (this.inputImage == null && this.inputTexture == null && this.noiseSeed == null) {
+            throw new IllegalStateException("Incremental rendering needs an input image, an input texture or a noise seed.");
         }
+
+        return RegionRenderer.renderIncremental(
+                this.workspace.getPool(this.parallelism), this.workspace,
+                this.getOutputWidth(), this.getOutputHeight(), _image,
+                _x0, _y0, _x1, _y1,
+                (int) Math.ceil(this.lowPassFilterLength) + 2, 0,
+                (w, h) -> this.readTexture(w, h, _x0, _y0, _x1, _y1), this::getFlowSampler,
+                this.getTrace(), null
+        );
     }
 
-    private float[] generateBoxFilterLUT() {
-        float[] lut = new float[this.discreteFilterSize];
+    public CompletableFuture<RenderStats> generateProgressive(String _filename, PreviewListener _listener) {
+        CompletableFuture<RenderStats> future = new CompletableFuture<>();
+        CompletableFuture<RenderStats> previous = this.progressive;
 
-        for (int i = 0; i < this.discreteFilterSize; i++) {
-            lut[i] = i;
+        this.progressive = future;
+
+        if (previous != null) {
+            previous.cancel(false);
         }
 
-        return lut;
+        // The passes run on a copy, so setters called for the next request don't leak into this one.
+        LICBuilder snapshot = this.snapshot();
+
+        this.workspace.getRenderExecutor().execute(() -> {
+            if (future.isDone()) {
+                return;
+            }
+
+            try {
+                future.complete(snapshot.renderProgressive(_filename, _listener, new RenderControl(future, null)));
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        });
+
+        return future;
     }
 
-    private void flowImagingLIC(
-            int _width, int _height,
-            Vector2D[] _vectors,
-            byte[] _noise, byte[] _image,
-            float[] _lut0, float[] _lut1
-    ) {
-        int advectsMax = (int) (this.lowPassFilterLength * 3);
-        float len2ID = (this.discreteFilterSize - 1) / this.lowPassFilterLength;
+    private RenderStats renderProgressive(String _filename, PreviewListener _listener, RenderControl _control) throws IOException {
+        int width = this.getOutputWidth();
+        int height = this.getOutputHeight();
+
+        long seed = this.getNoiseSeed();
+        ForkJoinPool pool = this.workspace.getPool(this.parallelism);
+        RegionRenderer.Trace trace = this.getTrace();
+
+        return ProgressiveRenderer.render(
+                width, height, this.previewSize, this.lowPassFilterLength,
+                (this.inputImage != null || this.inputTexture != null) ? this.readTexture(width, height) : null,
+                (level, w, h) -> (level == 0) ? this.makeWhiteNoise(w, h, seed, this.workspace.getTexture(w * h)) : ProgressiveRenderer.makeNoise(w, h, seed),
+                (this.flowField != null) ? this.getFlowSampler(width, height) : null,
+                (level, w, h) -> (level == 0) ? this.getFlowSampler(w, h) : this.getPreviewField(w, h),
+                this.workspace.getPreviewImage(width * height),
+                (w, h, length, texture, field, image, context) -> {
+                    DirtyRegion region = DirtyRegion.of(w, h, 0, 0, w, h);
+
+                    this.lowPassFilterLength = length;
+                    RegionRenderer.render(pool, this.workspace, w, h, texture, field, image, region, region, trace, null, context);
+                },
+                _filename, _listener, _control
+        );
+    }
+
+    private LICBuilder snapshot() {
+        try {
+            LICBuilder copy = (LICBuilder) super.clone();
+
+            copy.workspace = this.workspace.getBackgroundWorkspace();
+            copy.progressive = null;
+
+            return copy;
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private FlowSampler getPreviewField(int _width, int _height) {
+        if (this.lazyFlowField) {
+            return new AnalyticFlowSampler(_width, _height, this.flowFieldType);
+        }
+
+        FlowField vectors = FlowField.generateFlowField(_width, _height, this.flowFieldType);
+        this.normalizeVectors(vectors);
+
+        return vectors;
+    }
+
+    public RenderStats generateChannels(String _filename) throws IOException {
+        int width = this.getOutputWidth();
+        int height = this.getOutputHeight();
+        BlockLayout layout = this.getBlockLayout(width, height);
+
+        return ChannelRenderer.render(
+                this.workspace.getPool(this.parallelism), this.workspace,
+                width, height, layout,
+                this::readChannels, (w, h) -> this.toLayout(this.getFlowSampler(w, h), layout),
+                this.getTrace(), null,
+                _filename
+        );
+    }
+
+    private byte[][] readChannels(int _width, int _height) throws IOException {
+        if (this.inputImage != null) {
+            return ImageUtils.readImageChannels(this.inputImage);
+        }
 
-        for (int j = 0; j < _height; j++) {
-            for (int i = 0; i < _width; i++) {
+        // A texture source is a single gray plane, so it renders as one channel.
+        if (this.inputTexture != null) {
+            byte[] plane = this.workspace.getChannelPlanes(1, _width * _height)[0];
 
-                float[] textureAccum = new float[2];
-                float[] weightAccum = new float[2];
+            this.inputTexture.read(0, 0, _width, _height, plane);
+            return new byte[][]{plane};
+        }
 
-                for (int dir = 0; dir < 2; dir++) {
-                    int advects = 0;
-                    float currentLength = 0.0f;
+        byte[][] planes = new byte[this.noiseChannels][];
+        byte[][] scratch = this.workspace.getChannelPlanes(planes.length, _width * _height);
+        long seed = this.getNoiseSeed();
 
-                    float x = i + 0.5f;
-                    float y = j + 0.5f;
-                    float[] weightLUT = (dir == 0) ? _lut0 : _lut1;
+        for (int c = 0; c < planes.length; c++) {
+            planes[c] = this.makeWhiteNoise(_width, _height, NoiseTexture.layerSeed(seed, c), scratch[c]);
+        }
 
-                    while (currentLength < this.lowPassFilterLength && advects < advectsMax) {
-                        int vecIdx = ((int) y * _width + (int) x);
-                        Vector2D vec = _vectors[vecIdx];
+        return planes;
+    }
 
-                        float vx = vec.getX();
-                        float vy = vec.getY();
+    public ConvolutionPlan buildConvolutionPlan() {
+        int width = this.getOutputWidth();
+        int height = this.getOutputHeight();
 
-                        if (vx == 0 && vy == 0) {
-                            if (advects == 0) {
-                                textureAccum[dir] = 0;
-                                weightAccum[dir] = 1;
-                            }
-                            break;
-                        }
+        this.convolutionPlan = this.buildConvolutionPlan(width, height);
+        return this.convolutionPlan;
+    }
 
-                        vx = (dir == 0) ? vx : -vx;
-                        vy = (dir == 0) ? vy : -vy;
+    private ConvolutionPlan resolveConvolutionPlan(int _width, int _height) {
+        ConvolutionPlan plan = this.convolutionPlan;
 
-                        float segmentLength = this.lineSquareClipMax;
+        if (this.planCaching && (plan == null || plan.getWidth() != _width || plan.getHeight() != _height)) {
+            plan = this.buildConvolutionPlan(_width, _height);
+            this.convolutionPlan = plan;
+        }
 
-                        if (vx < -this.vectorComponentMinimum) {
-                            segmentLength = (int) x - x / vx;
-                        }
+        if (plan != null && (plan.getWidth() != _width || plan.getHeight() != _height)) {
+            throw new IllegalArgumentException("Convolution plan size " + plan.getWidth() + "x" + plan.getHeight()
+                    + " does not match the input image size " + _width + "x" + _height + ".");
+        }
 
-                        if (vx > this.vectorComponentMinimum) {
-                            segmentLength = Math.min(segmentLength, ((int) (x + 1.5f) - x) / vx);
-                        }
+        return plan;
+    }
 
-                        if (vy < -this.vectorComponentMinimum) {
-                            segmentLength = Math.min(segmentLength, ((int) y - y) / vy);
-                        }
+    private ConvolutionPlan buildConvolutionPlan(int _width, int _height) {
+        FlowSampler field = this.getFlowSampler(_width, _height);
+        byte[] texture = this.workspace.getTexture(_width * _height);
+        byte[] image = this.workspace.getOutputImage(_width * _height);
+        float[] lut = this.workspace.getBoxFilterLUT(this.discreteFilterSize);
+        ForkJoinPool pool = this.workspace.getPool(this.parallelism);
+        List<ConvolutionPlan.Recorder> recorders = new ArrayList<>();
 
-                        if (vy > this.vectorComponentMinimum) {
-                            segmentLength = Math.min(segmentLength, ((int) (y + 1.5f) - y) / vy);
-                        }
+        TileExecutor.execute(pool, _width, _height, TileExecutor.DEFAULT_TILE_SIZE, (x0, y0, x1, y1) -> {
+            ConvolutionPlan.Recorder recorder = new ConvolutionPlan.Recorder(x0, y0, x1, y1);
+            this.flowImagingLIC(_width, _height, field, texture, image, 0, lut, lut, x0, y0, x1, y1, recorder, RenderContext.NONE);
 
-                        float previousLength = currentLength;
-                        currentLength += segmentLength;
-                        segmentLength += 0.0004f;
+            synchronized (recorders) {
+                recorders.add(recorder);
+            }
+        });
 
-                        if (currentLength > this.lowPassFilterLength) {
-                            segmentLength = this.lowPassFilterLength - previousLength;
-                            currentLength = this.lowPassFilterLength;
-                        }
+        return ConvolutionPlan.assemble(_width, _height, recorders);
+    }
 
-                        float x1 = x + vx * segmentLength;
-                        float y1 = y + vy * segmentLength;
+    private FlowSampler getFlowSampler(int _width, int _height) {
+        FlowSampler field = (this.flowField != null) ? this.flowField
+                : this.lazyFlowField ? new AnalyticFlowSampler(_width, _height, this.flowFieldType)
+                : this.compactFlowField ? this.getCompactFlowField(_width, _height)
+                : this.getAnalyticFlowField(_width, _height);
 
-                        float sx = (x + x1) * 0.5f;
-                        float sy = (y + y1) * 0.5f;
+        if (field.getWidth() != _width || field.getHeight() != _height) {
+            throw new IllegalArgumentException("Flow field size " + field.getWidth() + "x" + field.getHeight()
+                    + " does not match the input image size " + _width + "x" + _height + ".");
+        }
 
-                        int texIdx = ((int) sy) * _width + (int) sx;
-                        texIdx = Math.max(0, Math.min(texIdx, _noise.length - 1));
-                        float texVal = Byte.toUnsignedInt(_noise[texIdx]);
+        return field;
+    }
 
-                        float weightAcc = weightLUT[(int) (currentLength * len2ID)];
-                        float sampleWeight = weightAcc - weightAccum[dir];
+    public void generateAnimation(String _pattern, int _frames) throws IOException {
+        int width = this.getOutputWidth();
+        int height = this.getOutputHeight();
+        byte[] inputTexture = this.readTexture(width, height);
 
-                        weightAccum[dir] = weightAcc;
-                        textureAccum[dir] += texVal * sampleWeight;
+        ForkJoinPool pool = this.workspace.getPool(this.parallelism);
+        AnimationPlan plan = this.buildAnimationPlan(width, height);
 
-                        advects++;
-                        x = x1;
-                        y = y1;
+        AnimationRenderer.render(
+                pool, this.workspace, plan, inputTexture,
+                this.discreteFilterSize, Math.max(1, _frames),
+                null,
+                _pattern
+        );
+    }
 
-                        if (x < 0 || x >= _width || y < 0 || y >= _height) break;
-                    }
-                }
+    private AnimationPlan buildAnimationPlan(int _width, int _height) {
+        FlowSampler field = this.getFlowSampler(_width, _height);
+        byte[] texture = this.workspace.getTexture(_width * _height);
+        byte[] image = this.workspace.getOutputImage(_width * _height);
+        float[] lut = this.workspace.getBoxFilterLUT(this.discreteFilterSize);
+        ForkJoinPool pool = this.workspace.getPool(this.parallelism);
+        List<AnimationPlan.Recorder> recorders = new ArrayList<>();
 
-                float texVal = (textureAccum[0] + textureAccum[1]) / (weightAccum[0] + weightAccum[1]);
-                texVal = Math.max(0.0f, Math.min(255.0f, texVal));
+        TileExecutor.execute(pool, _width, _height, TileExecutor.DEFAULT_TILE_SIZE, (x0, y0, x1, y1) -> {
+            AnimationPlan.Recorder recorder = new AnimationPlan.Recorder(x0, y0, x1, y1);
+            this.flowImagingLIC(_width, _height, field, texture, image, 0, lut, lut, x0, y0, x1, y1, recorder, RenderContext.NONE);
 
-                _image[j * _width + i] = (byte) texVal;
+            synchronized (recorders) {
+                recorders.add(recorder);
             }
+        });
+
+        return AnimationPlan.assemble(_width, _height, recorders);
+    }
+
+    public void generateTiled(String _filename, int _tileSize) throws IOException {
+        TextureSource texture = this.getTextureSource();
+
+        int width = texture.getWidth();
+        int height = texture.getHeight();
+
+        if (this.flowField != null && (this.flowField.getWidth() != width || this.flowField.getHeight() != height)) {
+            throw new IllegalArgumentException("Flow field size " + this.flowField.getWidth() + "x" + this.flowField.getHeight()
+                    + " does not match the input texture size " + width + "x" + height + ".");
         }
+
+        int halo = (int) Math.ceil(this.lowPassFilterLength) + 2;
+        float[] lut = this.workspace.getBoxFilterLUT(this.discreteFilterSize);
+        ForkJoinPool pool = this.workspace.getPool(this.parallelism);
+
+        TiledRenderer.render(
+                pool, width, height, _tileSize, halo,
+                (x0, y0, w, h) -> this.loadFieldWindow(width, height, x0, y0, w, h),
+                texture,
+                (w, h, field, tex, image, workspace) ->
+                        this.flowImagingLIC(w, h, field, tex, image, 0, lut, lut, 0, 0, w, h, null, RenderContext.NONE),
+                ImageUtils.getOutputFile(_filename)
+        );
+    }
+
+    private TextureSource getTextureSource() {
+        if (this.inputTexture != null) {
+            return this.inputTexture;
+        }
+
+        if (this.inputImage != null) {
+            return new ImageTexture(this.inputImage);
+        }
+
+        return new NoiseTexture(this.getOutputWidth(), this.getOutputHeight(), this.getNoiseSeed());
+    }
+
+    private FlowSampler loadFieldWindow(int _width, int _height, int _x0, int _y0, int _windowWidth, int _windowHeight) {
+        if (this.flowField != null) {
+            return FlowField.copyWindow(this.flowField, _x0, _y0, _windowWidth, _windowHeight);
+        }
+
+        if (this.lazyFlowField) {
+            return new AnalyticFlowSampler(_width, _height, _x0, _y0, _windowWidth, _windowHeight, this.flowFieldType);
+        }
+
+        FlowField window = FlowField.generateFlowField(_width, _height, _x0, _y0, _windowWidth, _windowHeight, this.flowFieldType);
+        this.normalizeVectors(window);
+
+        return window;
+    }
+
+    private BlockLayout getBlockLayout(int _width, int _height) {
+        return this.blockedLayout ? this.workspace.getBlockLayout(_width, _height) : null;
+    }
+
+    private FlowSampler toLayout(FlowSampler _field, BlockLayout _layout) {
+        if (_layout == null || !(_field instanceof FlowField)) {
+            return _field;
+        }
+
+        BlockedFlowField blocked = this.workspace.getBlockedFlowField(_field);
+
+        if (blocked == null) {
+            blocked = new BlockedFlowField(_field, _layout);
+            this.workspace.setBlockedFlowField(_field, blocked);
+        }
+
+        return blocked;
+    }
+
+    private long getNoiseSeed() {
+        return (this.noiseSeed != null) ? this.noiseSeed : ThreadLocalRandom.current().nextLong();
+    }
+
+    private byte[] makeWhiteNoise(int _width, int _height, long _seed, byte[] _whiteNoise) {
+        byte[] cached = (this.noiseSeed != null) ? this.workspace.getNoise(_width, _height, _seed) : null;
+
+        if (cached != null) {
+            return cached;
+        }
+
+        NoiseTexture texture = new NoiseTexture(_width, _height, _seed);
+        ForkJoinPool pool = this.workspace.getPool(this.parallelism);
+        byte[] noise = (this.noiseSeed != null) ? new byte[_width * _height] : _whiteNoise;
+
+        TileExecutor.execute(pool, _width, _height, TileExecutor.DEFAULT_TILE_SIZE, (x0, y0, x1, y1) ->
+                texture.fill(noise, x0, y0, x1, y1)
+        );
+
+        if (this.noiseSeed != null) {
+            this.workspace.setNoise(_width, _height, _seed, noise);
+        }
+
+        return noise;
+    }
+
+    private FlowField getAnalyticFlowField(int _width, int _height) {
+        FlowField vectors = this.workspace.getFlowField(_width, _height, this.flowFieldType);
+
+        if (vectors == null) {
+            vectors = FlowField.generateFlowField(_width, _height, this.flowFieldType);
+            this.normalizeVectors(vectors);
+            this.workspace.setFlowField(this.flowFieldType, vectors);
+        }
+
+        return vectors;
+    }
+
+    private AngleFlowField getCompactFlowField(int _width, int _height) {
+        AngleFlowField vectors = this.workspace.getCompactFlowField(_width, _height, this.flowFieldType);
+
+        if (vectors == null) {
+            vectors = AngleFlowField.generate(_width, _height, this.flowFieldType);
+            this.workspace.setCompactFlowField(this.flowFieldType, vectors);
+        }
+
+        return vectors;
+    }
+
+    void normalizeVectors(FlowField _vectors) {
+        _vectors.normalize();
+    }
+
+    void flowImagingLIC(
+            int _width, int _height,
+            FlowSampler _vectors,
+            byte[] _noise, byte[] _image, int _imageOffset,
+            float[] _lut0, float[] _lut1,
+            int _x0, int _y0, int _x1, int _y1,
+            SampleRecorder _recorder, RenderContext _context
+    ) {
+        LICTracer tracer = this.workspace.getTracer();
+
+        try {
+            tracer.configure(this.lowPassFilterLength, this.discreteFilterSize, this.lineSquareClipMax, this.vectorComponentMinimum,
+                            this.integrationMethod, this.integrationStep, this.integrationTolerance)
+                    .trace(_width, _height, _vectors, _noise, _image, _imageOffset, _lut0, _lut1, _x0, _y0, _x1, _y1, _recorder, _context);
+        } finally {
+            this.workspace.putTracer(tracer);
+        }
+    }
+
+    private RegionRenderer.Trace getTrace() {
+        float[] lut = this.workspace.getBoxFilterLUT(this.discreteFilterSize);
+
+        return (w, h, field, texture, image, offset, x0, y0, x1, y1, recorder, context) ->
+                this.flowImagingLIC(w, h, field, texture, image, offset, lut, lut, x0, y0, x1, y1, recorder, context);
     }
 }
@@ -0,0 +1,297 @@
+package org.carzuiliam.fastlic.builder;
+
+import org.carzuiliam.fastlic.utils.BlockLayout;
+import org.carzuiliam.fastlic.utils.FlowSampler;
+import org.carzuiliam.fastlic.utils.SampleRecorder;
+import org.carzuiliam.fastlic.utils.StreamlineIntegrator;
+
+import java.util.Arrays;
+
+class LICTracer {
+
+    private final float[] vec = new float[2];
+    private final float[] position = new float[2];
+    private int[] histogram = new int[0];
+
+    private float lowPassFilterLength;
+    private int discreteFilterSize;
+    private float lineSquareClipMax;
+    private float vectorComponentMinimum;
+    private StreamlineIntegrator.Method integrationMethod;
+    private float integrationStep;
+    private float integrationTolerance;
+    private StreamlineIntegrator integrator;
+
+    private int width;
+    private int height;
+    private float len2ID;
+    private byte[] noise;
+    private BlockLayout layout;
+    private SampleRecorder recorder;
+
+    private float textureAccum;
+    private float weightAccum;
+    private float currentLength;
+    private long zeroVectorHits;
+
+    LICTracer configure(
+            float _lowPassFilterLength, int _discreteFilterSize,
+            float _lineSquareClipMax, float _vectorComponentMinimum,
+            StreamlineIntegrator.Method _method, float _step, float _tolerance
+    ) {
+        this.lowPassFilterLength = _lowPassFilterLength;
+        this.discreteFilterSize = _discreteFilterSize;
+        this.lineSquareClipMax = _lineSquareClipMax;
+        this.vectorComponentMinimum = _vectorComponentMinimum;
+
+        // The integrator is the only tracer state that allocates, so it is rebuilt only when its settings change.
+        if (_method != null && (this.integrator == null || this.integrationMethod != _method
+                || this.integrationStep != _step || this.integrationTolerance != _tolerance)) {
+            this.integrator = StreamlineIntegrator.create(_method, _step, _tolerance);
+        }
+
+        this.integrationMethod = _method;
+        this.integrationStep = _step;
+        this.integrationTolerance = _tolerance;
+
+        return this;
+    }
+
+    void trace(
+            int _width, int _height,
+            FlowSampler _vectors,
+            byte[] _noise, byte[] _image, int _imageOffset,
+            float[] _lut0, float[] _lut1,
+            int _x0, int _y0, int _x1, int _y1,
+            SampleRecorder _recorder, RenderContext _context
+    ) {
+        int advectsMax = (int) (this.lowPassFilterLength * 3);
+
+        this.width = _width;
+        this.height = _height;
+        this.len2ID = (this.discreteFilterSize - 1) / this.lowPassFilterLength;
+        this.noise = _noise;
+        this.layout = _context.layout;
+        this.recorder = _recorder;
+        this.zeroVectorHits = 0;
+
+        RenderStats stats = _context.stats;
+        RenderControl control = _context.control;
+        int bins = 2 * advectsMax + 1;
+        int[] histogram = (stats != null) ? this.getHistogram(bins) : null;
+        long advections = 0;
+        long earlyTerminations = 0;
+
+        for (int j = _y0; j < _y1; j++) {
+            if (control != null) {
+                control.checkpoint();
+            }
+
+            for (int i = _x0; i < _x1; i++) {
+                float texture0 = 0.0f;
+                float texture1 = 0.0f;
+                float weight0 = 0.0f;
+                float weight1 = 0.0f;
+
+                int pixelSteps = 0;
+
+                for (int dir = 0; dir < 2; dir++) {
+                    float[] weightLUT = (dir == 0) ? _lut0 : _lut1;
+                    int advects = (this.integrationMethod != null)
+                            ? this.traceIntegrated(_width, _height, _vectors, i, j, dir, weightLUT, advectsMax)
+                            : this.traceSegments(_width, _height, _vectors, i, j, dir, weightLUT, advectsMax);
+
+                    if (dir == 0) {
+                        texture0 = this.textureAccum;
+                        weight0 = this.weightAccum;
+                    } else {
+                        texture1 = this.textureAccum;
+                        weight1 = this.weightAccum;
+                    }
+
+                    pixelSteps += advects;
+
+                    if (this.currentLength < this.lowPassFilterLength) {
+                        earlyTerminations++;
+                    }
+                }
+
+                if (histogram != null) {
+                    histogram[Math.min(pixelSteps, bins - 1)]++;
+                }
+
+                advections += pixelSteps;
+
+                if (_recorder != null) {
+                    _recorder.endPixel(weight0 + weight1);
+                }
+
+                float texVal = (texture0 + texture1) / (weight0 + weight1);
+                texVal = Math.max(0.0f, Math.min(255.0f, texVal));
+
+                _image[j * _width + i - _imageOffset] = (byte) texVal;
+            }
+        }
+
+        if (control != null) {
+            control.advance(RenderStats.Stage.TRACE, (long) (_x1 - _x0) * (_y1 - _y0), (long) _width * _height);
+        }
+
+        if (stats != null) {
+            stats.addTrace((long) (_x1 - _x0) * (_y1 - _y0), advections, earlyTerminations, this.zeroVectorHits, histogram, bins);
+        }
+
+        this.noise = null;
+        this.layout = null;
+        this.recorder = null;
+    }
+
+    // One histogram per tracer, cleared per tile; the stats merge it, so nothing is allocated per tile.
+    private int[] getHistogram(int _bins) {
+        if (this.histogram.length < _bins) {
+            this.histogram = new int[_bins];
+        } else {
+            Arrays.fill(this.histogram, 0, _bins, 0);
+        }
+
+        return this.histogram;
+    }
+
+    // FastLIC stepping: each step runs to the next cell boundary along the cell's own vector.
+    private int traceSegments(int _width, int _height, FlowSampler _vectors, int _i, int _j, int _dir, float[] _weightLUT, int _advectsMax) {
+        int advects = 0;
+        float currentLength = 0.0f;
+
+        float x = _i + 0.5f;
+        float y = _j + 0.5f;
+
+        this.textureAccum = 0.0f;
+        this.weightAccum = 0.0f;
+
+        while (currentLength < this.lowPassFilterLength && advects < _advectsMax) {
+            _vectors.sample((int) x, (int) y, this.vec);
+
+            float vx = this.vec[0];
+            float vy = this.vec[1];
+
+            if (vx == 0 && vy == 0) {
+                this.zeroVectorHits++;
+
+                if (advects == 0) {
+                    this.textureAccum = 0;
+                    this.weightAccum = 1;
+                }
+                break;
+            }
+
+            vx = (_dir == 0) ? vx : -vx;
+            vy = (_dir == 0) ? vy : -vy;
+
+            float segmentLength = this.lineSquareClipMax;
+
+            if (vx < -this.vectorComponentMinimum) {
+                segmentLength = (int) x - x / vx;
+            }
+
+            if (vx > this.vectorComponentMinimum) {
+                segmentLength = Math.min(segmentLength, ((int) (x + 1.5f) - x) / vx);
+            }
+
+            if (vy < -this.vectorComponentMinimum) {
+                segmentLength = Math.min(segmentLength, ((int) y - y) / vy);
+            }
+
+            if (vy > this.vectorComponentMinimum) {
+                segmentLength = Math.min(segmentLength, ((int) (y + 1.5f) - y) / vy);
+            }
+
+            float previousLength = currentLength;
+            currentLength += segmentLength;
+            segmentLength += 0.0004f;
+
+            if (currentLength > this.lowPassFilterLength) {
+                segmentLength = this.lowPassFilterLength - previousLength;
+                currentLength = this.lowPassFilterLength;
+            }
+
+            float x1 = x + vx * segmentLength;
+            float y1 = y + vy * segmentLength;
+
+            this.accumulate((x + x1) * 0.5f, (y + y1) * 0.5f, currentLength, _dir, _weightLUT);
+
+            advects++;
+            x = x1;
+            y = y1;
+
+            if (x < 0 || x >= _width || y < 0 || y >= _height) break;
+        }
+
+        this.currentLength = currentLength;
+        return advects;
+    }
+
+    // Integrator stepping: each step is split into unit samples along the chord it travelled.
+    private int traceIntegrated(int _width, int _height, FlowSampler _vectors, int _i, int _j, int _dir, float[] _weightLUT, int _advectsMax) {
+        int advects = 0;
+        float currentLength = 0.0f;
+
+        this.textureAccum = 0.0f;
+        this.weightAccum = 0.0f;
+        this.position[0] = _i + 0.5f;
+        this.position[1] = _j + 0.5f;
+        this.integrator.reset();
+
+        while (currentLength < this.lowPassFilterLength && advects < _advectsMax) {
+            float x = this.position[0];
+            float y = this.position[1];
+            float length = this.integrator.advance(_vectors, this.position, (_dir == 0) ? 1.0f : -1.0f, this.lowPassFilterLength - currentLength);
+
+            if (length == 0) {
+                this.zeroVectorHits++;
+
+                if (advects == 0) {
+                    this.textureAccum = 0;
+                    this.weightAccum = 1;
+                }
+                break;
+            }
+
+            int samples = Math.max(1, (int) Math.ceil(length));
+            float dx = (this.position[0] - x) / samples;
+            float dy = (this.position[1] - y) / samples;
+
+            for (int s = 0; s < samples; s++) {
+                currentLength = Math.min(this.lowPassFilterLength, currentLength + length / samples);
+                this.accumulate(x + dx * (s + 0.5f), y + dy * (s + 0.5f), currentLength, _dir, _weightLUT);
+            }
+
+            advects++;
+
+            if (this.position[0] < 0 || this.position[0] >= _width || this.position[1] < 0 || this.position[1] >= _height) break;
+        }
+
+        this.currentLength = currentLength;
+        return advects;
+    }
+
+    private void accumulate(float _sx, float _sy, float _length, int _dir, float[] _weightLUT) {
+        // Each axis is clamped on its own, so a sample past a border never wraps onto the neighbouring row and a
+        // tile window reads the same texels as the full image.
+        int tx = Math.max(0, Math.min((int) _sx, this.width - 1));
+        int ty = Math.max(0, Math.min((int) _sy, this.height - 1));
+        int texIdx = (this.layout != null) ? this.layout.index(tx, ty) : ty * this.width + tx;
+
+        float texVal = Byte.toUnsignedInt(this.noise[texIdx]);
+
+        int lutIdx = (int) (_length * this.len2ID);
+        float weightAcc = _weightLUT[lutIdx];
+        float sampleWeight = weightAcc - this.weightAccum;
+
+        this.weightAccum = weightAcc;
+        this.textureAccum += texVal * sampleWeight;
+
+        if (this.recorder != null) {
+            this.recorder.add(texIdx, _dir, lutIdx, sampleWeight);
+        }
+    }
+}
@@ -0,0 +1,489 @@
+package org.carzuiliam.fastlic.builder;
+
+import org.carzuiliam.fastlic.utils.AngleFlowField;
+import org.carzuiliam.fastlic.utils.BlockLayout;
+import org.carzuiliam.fastlic.utils.BlockedFlowField;
+import org.carzuiliam.fastlic.utils.FlowField;
+import org.carzuiliam.fastlic.utils.FlowSampler;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+public class LICWorkspace {
+
+    private static final int NOISE_CACHE_SIZE = 4;
+
+    private byte[] texture;
+    private byte[] inputTexture;
+    private Object inputTextureSource;
+    private byte[] outputImage;
+    private byte[] windowImage;
+    private byte[] previewImage;
+    private byte[] blockedTexture;
+    private byte[][] channelPlanes;
+    private byte[][] blockedPlanes;
+    private byte[][] channelImages;
+    private byte[] blurBuffer;
+    private float[] blurImage;
+    private float[] blurLine;
+    private float[] blurRows;
+    private int[] blurOffsets;
+    private float[] boxFilterLUT;
+    private float[] gaussianKernel;
+    private int gaussianRadius;
+    private float gaussianSigma;
+
+    private float[] hitAccum;
+    private int[] hitCount;
+    private int[] streamlinePixels;
+    private float[] streamlineSamples;
+    private float[] streamlineVector;
+    private int[] streamlineHistogram;
+
+    private byte[][] streamBands;
+    private byte[] streamRing;
+    private byte[] streamRow;
+
+    private byte[][] animationFrames;
+    private float[][] phaseLUTs;
+
+    private final ConcurrentLinkedDeque<LICTracer> tracers = new ConcurrentLinkedDeque<>();
+
+    private Map<String, byte[]> noiseCache;
+    private FlowField flowField;
+    private FlowField.Type flowFieldType;
+    private AngleFlowField compactFlowField;
+    private FlowField.Type compactFlowFieldType;
+    private BlockLayout blockLayout;
+    private BlockedFlowField blockedFlowField;
+    private FlowSampler blockedFlowFieldSource;
+
+    private ForkJoinPool pool;
+    private ExecutorService renderExecutor;
+    private ExecutorService encodeExecutor;
+    private LICWorkspace background;
+
+    byte[] getTexture(int _size) {
+        if (this.texture == null || this.texture.length < _size) {
+            this.texture = new byte[_size];
+        }
+
+        return this.texture;
+    }
+
+    // Keyed by the image or texture source it was decoded from.
+    byte[] getInputTexture(Object _source) {
+        return (this.inputTextureSource == _source) ? this.inputTexture : null;
+    }
+
+    byte[] resetInputTexture(Object _source, int _size) {
+        if (this.inputTexture == null || this.inputTexture.length < _size) {
+            this.inputTexture = new byte[_size];
+        }
+
+        this.inputTextureSource = _source;
+        return this.inputTexture;
+    }
+
+    byte[] getBlockedTexture(int _size) {
+        if (this.blockedTexture == null || this.blockedTexture.length < _size) {
+            this.blockedTexture = new byte[_size];
+        }
+
+        return this.blockedTexture;
+    }
+
+    byte[][] getChannelPlanes(int _count, int _size) {
+        if (this.channelPlanes == null || this.channelPlanes.length < _count || this.channelPlanes[0].length < _size) {
+            this.channelPlanes = new byte[_count][_size];
+        }
+
+        return this.channelPlanes;
+    }
+
+    byte[][] getBlockedPlanes(int _count, int _size) {
+        if (this.blockedPlanes == null || this.blockedPlanes.length < _count || this.blockedPlanes[0].length < _size) {
+            this.blockedPlanes = new byte[_count][_size];
+        }
+
+        return this.blockedPlanes;
+    }
+
+    // The encoder writes one channel per array, so the count has to match exactly.
+    byte[][] getChannelImages(int _count, int _size) {
+        if (this.channelImages == null || this.channelImages.length != _count || this.channelImages[0].length < _size) {
+            this.channelImages = new byte[_count][_size];
+        }
+
+        return this.channelImages;
+    }
+
+    byte[] getOutputImage(int _size) {
+        if (this.outputImage == null || this.outputImage.length < _size) {
+            this.outputImage = new byte[_size];
+        }
+
+        return this.outputImage;
+    }
+
+    byte[] getWindowImage(int _size) {
+        if (this.windowImage == null || this.windowImage.length < _size) {
+            this.windowImage = new byte[_size];
+        }
+
+        return this.windowImage;
+    }
+
+    byte[] getPreviewImage(int _size) {
+        if (this.previewImage == null || this.previewImage.length < _size) {
+            this.previewImage = new byte[_size];
+        }
+
+        return this.previewImage;
+    }
+
+    byte[] getBlurBuffer(int _size) {
+        if (this.blurBuffer == null || this.blurBuffer.length < _size) {
+            this.blurBuffer = new byte[_size];
+        }
+
+        return this.blurBuffer;
+    }
+
+    float[] getBlurImage(int _size) {
+        if (this.blurImage == null || this.blurImage.length < _size) {
+            this.blurImage = new float[_size];
+        }
+
+        return this.blurImage;
+    }
+
+    float[] getBlurLine(int _size) {
+        if (this.blurLine == null || this.blurLine.length < _size) {
+            this.blurLine = new float[_size];
+        }
+
+        return this.blurLine;
+    }
+
+    float[] getBlurRows(int _size) {
+        if (this.blurRows == null || this.blurRows.length < _size) {
+            this.blurRows = new float[_size];
+        }
+
+        return this.blurRows;
+    }
+
+    int[] getBlurOffsets(int _size) {
+        if (this.blurOffsets == null || this.blurOffsets.length < _size) {
+            this.blurOffsets = new int[_size];
+        }
+
+        return this.blurOffsets;
+    }
+
+    float[] getBoxFilterLUT(int _size) {
+        if (this.boxFilterLUT == null || this.boxFilterLUT.length < _size) {
+            this.boxFilterLUT = new float[_size];
+
+            for (int i = 0; i < _size; i++) {
+                this.boxFilterLUT[i] = i;
+            }
+        }
+
+        return this.boxFilterLUT;
+    }
+
+    float[] getGaussianKernel(int _radius, float _sigma) {
+        if (this.gaussianKernel == null || this.gaussianRadius != _radius || this.gaussianSigma != _sigma) {
+            return null;
+        }
+
+        return this.gaussianKernel;
+    }
+
+    void setGaussianKernel(int _radius, float _sigma, float[] _kernel) {
+        this.gaussianKernel = _kernel;
+        this.gaussianRadius = _radius;
+        this.gaussianSigma = _sigma;
+    }
+
+    float[] getHitAccum(int _size) {
+        if (this.hitAccum == null || this.hitAccum.length < _size) {
+            this.hitAccum = new float[_size];
+        }
+
+        return this.hitAccum;
+    }
+
+    int[] getHitCount(int _size) {
+        if (this.hitCount == null || this.hitCount.length < _size) {
+            this.hitCount = new int[_size];
+        }
+
+        return this.hitCount;
+    }
+
+    int[] getStreamlinePixels(int _size) {
+        if (this.streamlinePixels == null || this.streamlinePixels.length < _size) {
+            this.streamlinePixels = new int[_size];
+        }
+
+        return this.streamlinePixels;
+    }
+
+    float[] getStreamlineSamples(int _size) {
+        if (this.streamlineSamples == null || this.streamlineSamples.length < _size) {
+            this.streamlineSamples = new float[_size];
+        }
+
+        return this.streamlineSamples;
+    }
+
+    int[] getStreamlineHistogram(int _size) {
+        if (this.streamlineHistogram == null || this.streamlineHistogram.length < _size) {
+            this.streamlineHistogram = new int[_size];
+        }
+
+        return this.streamlineHistogram;
+    }
+
+    float[] getStreamlineVector() {
+        if (this.streamlineVector == null) {
+            this.streamlineVector = new float[2];
+        }
+
+        return this.streamlineVector;
+    }
+
+    // Tiles borrow a tracer and hand it back, so every worker thread keeps reusing the same scratch state.
+    LICTracer getTracer() {
+        LICTracer tracer = this.tracers.poll();
+        return (tracer != null) ? tracer : new LICTracer();
+    }
+
+    void putTracer(LICTracer _tracer) {
+        this.tracers.push(_tracer);
+    }
+
+    byte[][] getStreamBands(int _size) {
+        if (this.streamBands == null || this.streamBands[0].length < _size) {
+            this.streamBands = new byte[][]{new byte[_size], new byte[_size]};
+        }
+
+        return this.streamBands;
+    }
+
+    byte[] getStreamRing(int _size) {
+        if (this.streamRing == null || this.streamRing.length < _size) {
+            this.streamRing = new byte[_size];
+        }
+
+        return this.streamRing;
+    }
+
+    byte[] getStreamRow(int _size) {
+        if (this.streamRow == null || this.streamRow.length < _size) {
+            this.streamRow = new byte[_size];
+        }
+
+        return this.streamRow;
+    }
+
+    byte[][] getAnimationFrames(int _size) {
+        if (this.animationFrames == null || this.animationFrames[0].length < _size) {
+            this.animationFrames = new byte[][]{new byte[_size], new byte[_size]};
+        }
+
+        return this.animationFrames;
+    }
+
+    // A phase LUT spans its whole length, so it has to be exactly the filter size.
+    float[][] getPhaseLUTs(int _size) {
+        if (this.phaseLUTs == null || this.phaseLUTs[0].length != _size) {
+            this.phaseLUTs = new float[][]{new float[_size], new float[_size]};
+        }
+
+        return this.phaseLUTs;
+    }
+
+    FlowField getFlowField(int _width, int _height, FlowField.Type _type) {
+        if (this.flowField == null
+                || this.flowFieldType != _type
+                || this.flowField.getWidth() != _width
+                || this.flowField.getHeight() != _height) {
+            return null;
+        }
+
+        return this.flowField;
+    }
+
+    void setFlowField(FlowField.Type _type, FlowField _flowField) {
+        this.flowFieldType = _type;
+        this.flowField = _flowField;
+    }
+
+    byte[] getNoise(int _width, int _height, long _seed) {
+        return (this.noiseCache != null) ? this.noiseCache.get(_width + "x" + _height + "@" + _seed) : null;
+    }
+
+    void setNoise(int _width, int _height, long _seed, byte[] _noise) {
+        if (this.noiseCache == null) {
+            this.noiseCache = new LinkedHashMap<>(NOISE_CACHE_SIZE, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, byte[]> _eldest) {
+                    return this.size() > NOISE_CACHE_SIZE;
+                }
+            };
+        }
+
+        this.noiseCache.put(_width + "x" + _height + "@" + _seed, _noise);
+    }
+
+    AngleFlowField getCompactFlowField(int _width, int _height, FlowField.Type _type) {
+        if (this.compactFlowField == null
+                || this.compactFlowFieldType != _type
+                || this.compactFlowField.getWidth() != _width
+                || this.compactFlowField.getHeight() != _height) {
+            return null;
+        }
+
+        return this.compactFlowField;
+    }
+
+    void setCompactFlowField(FlowField.Type _type, AngleFlowField _flowField) {
+        this.compactFlowFieldType = _type;
+        this.compactFlowField = _flowField;
+    }
+
+    BlockLayout getBlockLayout(int _width, int _height) {
+        if (this.blockLayout == null || this.blockLayout.getWidth() != _width || this.blockLayout.getHeight() != _height) {
+            this.blockLayout = new BlockLayout(_width, _height, BlockLayout.DEFAULT_BLOCK_SHIFT);
+        }
+
+        return this.blockLayout;
+    }
+
+    // Keyed by the field it was copied from; a field edited in place has to be set on the builder again.
+    BlockedFlowField getBlockedFlowField(FlowSampler _source) {
+        return (this.blockedFlowFieldSource == _source) ? this.blockedFlowField : null;
+    }
+
+    void setBlockedFlowField(FlowSampler _source, BlockedFlowField _flowField) {
+        this.blockedFlowFieldSource = _source;
+        this.blockedFlowField = _flowField;
+    }
+
+    ForkJoinPool getPool(int _parallelism) {
+        if (_parallelism <= 1) {
+            return null;
+        }
+
+        if (this.pool == null || this.pool.getParallelism() != _parallelism) {
+            if (this.pool != null) {
+                this.pool.shutdown();
+            }
+
+            this.pool = new ForkJoinPool(_parallelism);
+        }
+
+        return this.pool;
+    }
+
+    synchronized ExecutorService getRenderExecutor() {
+        if (this.renderExecutor == null) {
+            this.renderExecutor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "fastlic-render");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        return this.renderExecutor;
+    }
+
+    synchronized ExecutorService getEncodeExecutor() {
+        if (this.encodeExecutor == null) {
+            this.encodeExecutor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "fastlic-encode");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        return this.encodeExecutor;
+    }
+
+    // Renders queued on the render executor run one at a time on this workspace, never on buffers the caller is using.
+    synchronized LICWorkspace getBackgroundWorkspace() {
+        if (this.background == null) {
+            this.background = new LICWorkspace();
+        }
+
+        return this.background;
+    }
+
+    public void release() {
+        if (this.pool != null) {
+            this.pool.shutdown();
+        }
+
+        if (this.renderExecutor != null) {
+            this.renderExecutor.shutdown();
+        }
+
+        if (this.encodeExecutor != null) {
+            this.encodeExecutor.shutdown();
+        }
+
+        if (this.background != null) {
+            this.background.release();
+        }
+
+        this.texture = null;
+        this.inputTexture = null;
+        this.inputTextureSource = null;
+        this.outputImage = null;
+        this.windowImage = null;
+        this.previewImage = null;
+        this.blockedTexture = null;
+        this.channelPlanes = null;
+        this.blockedPlanes = null;
+        this.channelImages = null;
+        this.blurBuffer = null;
+        this.blurImage = null;
+        this.blurLine = null;
+        this.blurRows = null;
+        this.blurOffsets = null;
+        this.boxFilterLUT = null;
+        this.gaussianKernel = null;
+        this.hitAccum = null;
+        this.hitCount = null;
+        this.streamlinePixels = null;
+        this.streamlineSamples = null;
+        this.streamlineVector = null;
+        this.streamlineHistogram = null;
+        this.streamBands = null;
+        this.streamRing = null;
+        this.streamRow = null;
+        this.animationFrames = null;
+        this.phaseLUTs = null;
+        this.tracers.clear();
+        this.noiseCache = null;
+        this.flowField = null;
+        this.flowFieldType = null;
+        this.compactFlowField = null;
+        this.compactFlowFieldType = null;
+        this.blockLayout = null;
+        this.blockedFlowField = null;
+        this.blockedFlowFieldSource = null;
+        this.pool = null;
+        this.renderExecutor = null;
+        this.encodeExecutor = null;
+        this.background = null;
+    }
+}
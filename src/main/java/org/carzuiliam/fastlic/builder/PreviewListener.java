@@ -0,0 +1,5 @@
+package org.carzuiliam.fastlic.builder;
+
+public interface PreviewListener {
+    void preview(int _level, int _width, int _height, byte[] _image);
+}
@@ -0,0 +1,5 @@
+package org.carzuiliam.fastlic.builder;
+
+public interface ProgressListener {
+    void progress(RenderStats.Stage _stage, double _fraction);
+}
@@ -0,0 +1,101 @@
+package org.carzuiliam.fastlic.builder;
+
+import org.carzuiliam.fastlic.utils.FlowField;
+import org.carzuiliam.fastlic.utils.FlowSampler;
+import org.carzuiliam.fastlic.utils.ImageUtils;
+import org.carzuiliam.fastlic.utils.NoiseTexture;
+
+import java.io.IOException;
+
+class ProgressiveRenderer {
+
+    interface Level<T> {
+        T make(int _level, int _width, int _height) throws IOException;
+    }
+
+    interface Pass {
+        void render(int _width, int _height, float _length, byte[] _texture, FlowSampler _field, byte[] _image, RenderContext _context);
+    }
+
+    static RenderStats render(
+            int _width, int _height, int _previewSize, float _length,
+            byte[] _texture, Level<byte[]> _noise,
+            FlowSampler _field, Level<FlowSampler> _fields,
+            byte[] _image, Pass _pass,
+            String _filename, PreviewListener _listener, RenderControl _control
+    ) throws IOException {
+        int levels = getLevels(_width, _height, _previewSize);
+        byte[][] textures = new byte[levels + 1][];
+        FlowSampler[] fields = new FlowSampler[levels + 1];
+
+        // Inputs that only exist at full resolution are read once and averaged down; procedural ones are made per level.
+        if (_texture != null) {
+            textures[0] = _texture;
+
+            for (int level = 1; level <= levels; level++) {
+                textures[level] = ImageUtils.downsample(_width >> (level - 1), _height >> (level - 1), textures[level - 1]);
+            }
+        }
+
+        if (_field != null) {
+            fields[0] = _field;
+
+            for (int level = 1; level <= levels; level++) {
+                fields[level] = FlowField.downsample(fields[level - 1]);
+            }
+        }
+
+        RenderStats stats = null;
+
+        for (int level = levels; level >= 0; level--) {
+            int levelWidth = _width >> level;
+            int levelHeight = _height >> level;
+
+            stats = new RenderStats(levelWidth, levelHeight);
+
+            try (RenderStats.Timer ignored = stats.time(RenderStats.Stage.TEXTURE)) {
+                if (textures[level] == null) {
+                    textures[level] = _noise.make(level, levelWidth, levelHeight);
+                }
+            }
+
+            try (RenderStats.Timer ignored = stats.time(RenderStats.Stage.FIELD)) {
+                if (fields[level] == null) {
+                    fields[level] = _fields.make(level, levelWidth, levelHeight);
+                }
+            }
+
+            _pass.render(levelWidth, levelHeight, Math.max(1.0f, _length / (1 << level)), textures[level], fields[level], _image, new RenderContext(stats, _control, null));
+
+            _control.checkpoint();
+
+            if (level == 0 && _filename != null) {
+                try (RenderStats.Timer ignored = stats.time(RenderStats.Stage.ENCODE)) {
+                    ImageUtils.writeByteArray(_width, _height, _image, _filename);
+                }
+            }
+
+            stats.finish();
+            _listener.preview(level, levelWidth, levelHeight, _image);
+        }
+
+        return stats;
+    }
+
+    static byte[] makeNoise(int _width, int _height, long _seed) {
+        byte[] noise = new byte[_width * _height];
+
+        new NoiseTexture(_width, _height, _seed).fill(noise, 0, 0, _width, _height);
+        return noise;
+    }
+
+    private static int getLevels(int _width, int _height, int _previewSize) {
+        int levels = 0;
+
+        while ((Math.max(_width, _height) >> levels) > _previewSize && (Math.min(_width, _height) >> (levels + 1)) >= 16) {
+            levels++;
+        }
+
+        return levels;
+    }
+}
@@ -0,0 +1,108 @@
+package org.carzuiliam.fastlic.builder;
+
+import org.carzuiliam.fastlic.utils.FlowSampler;
+import org.carzuiliam.fastlic.utils.SampleRecorder;
+import org.carzuiliam.fastlic.utils.TileExecutor;
+
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+
+class RegionRenderer {
+
+    interface Input<T> {
+        T read(int _width, int _height) throws IOException;
+    }
+
+    interface Trace {
+        void trace(
+                int _width, int _height,
+                FlowSampler _field, byte[] _texture, byte[] _image, int _imageOffset,
+                int _x0, int _y0, int _x1, int _y1,
+                SampleRecorder _recorder, RenderContext _context
+        );
+    }
+
+    interface Blur {
+        void apply(int _width, int _height, byte[] _image, LICWorkspace _workspace, RenderControl _control);
+    }
+
+    static RenderStats renderIncremental(
+            ForkJoinPool _pool, LICWorkspace _workspace,
+            int _width, int _height, byte[] _image,
+            int _x0, int _y0, int _x1, int _y1,
+            int _reach, int _blurExtent,
+            Input<byte[]> _texture, Input<FlowSampler> _field,
+            Trace _trace, Blur _blur
+    ) throws IOException {
+        if (_image.length != _width * _height) {
+            throw new IllegalArgumentException("Image buffer of " + _image.length + " pixels does not match the " + _width + "x" + _height + " output.");
+        }
+
+        DirtyRegion changed = DirtyRegion.of(_width, _height, _x0, _y0, _x1, _y1)
+                .reach(_width, _height, _reach)
+                .dilate(_width, _height, _blurExtent);
+        DirtyRegion traced = changed.dilate(_width, _height, _blurExtent);
+
+        RenderStats stats = new RenderStats(_width, _height);
+        byte[] texture;
+        FlowSampler field;
+
+        try (RenderStats.Timer ignored = stats.time(RenderStats.Stage.TEXTURE)) {
+            texture = _texture.read(_width, _height);
+        }
+
+        try (RenderStats.Timer ignored = stats.time(RenderStats.Stage.FIELD)) {
+            field = _field.read(_width, _height);
+        }
+
+        render(_pool, _workspace, _width, _height, texture, field, _image, traced, changed, _trace, _blur, new RenderContext(stats, null, null));
+
+        stats.finish();
+        return stats;
+    }
+
+    static void render(
+            ForkJoinPool _pool, LICWorkspace _workspace,
+            int _width, int _height,
+            byte[] _texture, FlowSampler _field, byte[] _image,
+            DirtyRegion _traced, DirtyRegion _changed,
+            Trace _trace, Blur _blur,
+            RenderContext _context
+    ) {
+        if (_blur == null) {
+            try (RenderStats.Timer ignored = _context.stats.time(RenderStats.Stage.TRACE)) {
+                TileExecutor.execute(_pool, _changed.getWidth(), _changed.getHeight(), TileExecutor.DEFAULT_TILE_SIZE, (x0, y0, x1, y1) ->
+                        _trace.trace(_width, _height, _field, _texture, _image, 0,
+                                _changed.x0 + x0, _changed.y0 + y0, _changed.x0 + x1, _changed.y0 + y1, null, _context)
+                );
+            }
+
+            return;
+        }
+
+        int windowWidth = _traced.getWidth();
+        int windowHeight = _traced.getHeight();
+        byte[] band = _workspace.getOutputImage(windowHeight * _width);
+        byte[] window = _workspace.getWindowImage(windowWidth * windowHeight);
+
+        try (RenderStats.Timer ignored = _context.stats.time(RenderStats.Stage.TRACE)) {
+            TileExecutor.execute(_pool, windowWidth, windowHeight, TileExecutor.DEFAULT_TILE_SIZE, (x0, y0, x1, y1) ->
+                    _trace.trace(_width, _height, _field, _texture, band, _traced.y0 * _width,
+                            _traced.x0 + x0, _traced.y0 + y0, _traced.x0 + x1, _traced.y0 + y1, null, _context)
+            );
+        }
+
+        for (int j = 0; j < windowHeight; j++) {
+            System.arraycopy(band, j * _width + _traced.x0, window, j * windowWidth, windowWidth);
+        }
+
+        // The window reaches one blur extent past the changed pixels, so its clamped borders never show in them.
+        try (RenderStats.Timer ignored = _context.stats.time(RenderStats.Stage.BLUR)) {
+            _blur.apply(windowWidth, windowHeight, window, _workspace, _context.control);
+        }
+
+        for (int y = _changed.y0; y < _changed.y1; y++) {
+            System.arraycopy(window, (y - _traced.y0) * windowWidth + (_changed.x0 - _traced.x0), _image, y * _width + _changed.x0, _changed.getWidth());
+        }
+    }
+}
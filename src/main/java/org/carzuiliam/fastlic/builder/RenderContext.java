@@ -0,0 +1,22 @@
+package org.carzuiliam.fastlic.builder;
+
+import org.carzuiliam.fastlic.utils.BlockLayout;
+
+class RenderContext {
+
+    static final RenderContext NONE = new RenderContext(null, null, null);
+
+    final RenderStats stats;
+    final RenderControl control;
+    final BlockLayout layout;
+
+    RenderContext(RenderStats _stats, RenderControl _control, BlockLayout _layout) {
+        this.stats = _stats;
+        this.control = _control;
+        this.layout = _layout;
+    }
+
+    RenderContext withLayout(BlockLayout _layout) {
+        return new RenderContext(this.stats, this.control, _layout);
+    }
+}
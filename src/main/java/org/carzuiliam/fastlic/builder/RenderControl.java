@@ -0,0 +1,36 @@
+package org.carzuiliam.fastlic.builder;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+class RenderControl {
+
+    private final Future<?> future;
+    private final ProgressListener listener;
+    private final AtomicLong[] done;
+
+    RenderControl(Future<?> _future, ProgressListener _listener) {
+        this.future = _future;
+        this.listener = _listener;
+        this.done = new AtomicLong[RenderStats.Stage.values().length];
+
+        for (int k = 0; k < this.done.length; k++) {
+            this.done[k] = new AtomicLong();
+        }
+    }
+
+    void checkpoint() {
+        if (this.future.isDone()) {
+            throw new CancellationException("Render cancelled.");
+        }
+    }
+
+    void advance(RenderStats.Stage _stage, long _units, long _total) {
+        long done = this.done[_stage.ordinal()].addAndGet(_units);
+
+        if (this.listener != null) {
+            this.listener.progress(_stage, Math.min(1.0, (double) done / _total));
+        }
+    }
+}
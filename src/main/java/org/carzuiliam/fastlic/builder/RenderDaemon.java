@@ -0,0 +1,492 @@
+package org.carzuiliam.fastlic.builder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.carzuiliam.fastlic.utils.AngleFlowField;
+import org.carzuiliam.fastlic.utils.ByteTexture;
+import org.carzuiliam.fastlic.utils.FlowField;
+import org.carzuiliam.fastlic.utils.FlowSampler;
+import org.carzuiliam.fastlic.utils.ImageUtils;
+import org.carzuiliam.fastlic.utils.StreamlineIntegrator;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class RenderDaemon {
+
+    public static final int DEFAULT_PORT = 8642;
+
+    private static final int MAX_SIZE = 8192;
+    private static final int MAX_FILTER_SIZE = 1 << 16;
+    private static final float MAX_FILTER_LENGTH = 1024.0f;
+    private static final int MAX_BLUR_RADIUS = 64;
+    private static final Set<String> FAST_LIC_PARAMETERS = Set.of("mode", "streamlineLength", "minimumHits", "blurMode", "blurRadius", "blurSigma");
+
+    private final LICWorkspace workspace;
+    private final AtomicLong hits;
+    private final AtomicLong misses;
+
+    private ResultCache cache;
+    private int threads;
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public RenderDaemon() {
+        this.workspace = new LICWorkspace();
+        this.hits = new AtomicLong();
+        this.misses = new AtomicLong();
+        this.cache = new ResultCache(Runtime.getRuntime().maxMemory() / 4);
+        this.threads = 4;
+    }
+
+    public RenderDaemon setCacheSize(long _bytes) {
+        this.cache = new ResultCache(_bytes);
+        return this;
+    }
+
+    public RenderDaemon setThreads(int _value) {
+        this.threads = Math.max(1, _value);
+        return this;
+    }
+
+    public RenderDaemon start(int _port) throws IOException {
+        // Without TCP_NODELAY small responses wait on delayed ACKs, which costs ~40 ms per cache hit.
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), _port), 0);
+        this.executor = Executors.newFixedThreadPool(this.threads);
+
+        this.server.createContext("/render", this::handleRender);
+        this.server.createContext("/stats", this::handleStats);
+        this.server.setExecutor(this.executor);
+        this.server.start();
+
+        return this;
+    }
+
+    public int getPort() {
+        return this.server.getAddress().getPort();
+    }
+
+    public void stop() {
+        if (this.server != null) {
+            this.server.stop(0);
+            this.executor.shutdownNow();
+            this.server = null;
+        }
+
+        this.workspace.release();
+    }
+
+    public byte[] render(RenderSpec _spec) throws IOException {
+        String key = getKey(_spec);
+        byte[] output = this.getCached(key);
+
+        return (output != null) ? output : this.renderMissing(_spec, key);
+    }
+
+    private byte[] getCached(String _key) {
+        byte[] output = (byte[]) this.cache.get("output:" + _key);
+
+        if (output != null) {
+            this.hits.incrementAndGet();
+        }
+
+        return output;
+    }
+
+    private byte[] renderMissing(RenderSpec _spec, String _key) throws IOException {
+        // Renders share one workspace, so they run one at a time; a request that waited here may find its result ready.
+        synchronized (this.workspace) {
+            byte[] output = this.getCached(_key);
+
+            if (output == null) {
+                this.misses.incrementAndGet();
+                output = this.generate(_spec, getExtension(_spec.getOutput()));
+                this.cache.put("output:" + _key, output, output.length);
+            }
+
+            return output;
+        }
+    }
+
+    private byte[] generate(RenderSpec _spec, String _format) throws IOException {
+        ByteTexture texture = (_spec.getInputImage() != null) ? this.getTexture(_spec.getInputImage()) : null;
+        int width = (texture != null) ? texture.getWidth() : _spec.getSquareFlowFieldSize();
+        int height = (texture != null) ? texture.getHeight() : _spec.getSquareFlowFieldSize();
+        FlowSampler field = this.getField(_spec.getFlowFieldType(), width, height, _spec.isCompactFlowField());
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        switch (_spec.getEngine()) {
+            case LIC -> _spec.configure(new LICBuilder().setWorkspace(this.workspace))
+                    .setFlowField(field)
+                    .setInputTexture(texture)
+                    .setNoiseSeed(_spec.getNoiseSeed())
+                    .generate(output, _format);
+            case FAST_LIC -> _spec.configure(new FastLICBuilder().setWorkspace(this.workspace))
+                    .setFlowField(field)
+                    .setInputTexture(texture)
+                    .setNoiseSeed(_spec.getNoiseSeed())
+                    .generate(output, _format);
+        }
+
+        return output.toByteArray();
+    }
+
+    private ByteTexture getTexture(String _resourceName) throws IOException {
+        ByteTexture texture = (ByteTexture) this.cache.get("texture:" + _resourceName);
+
+        if (texture == null) {
+            BufferedImage image = readImage(_resourceName);
+
+            texture = new ByteTexture(image.getWidth(), image.getHeight(), ImageUtils.readImageToByteArray(image));
+            this.cache.put("texture:" + _resourceName, texture, texture.getPixels().length);
+        }
+
+        return texture;
+    }
+
+    // The header is checked before decoding, so an oversized image is rejected without allocating its pixels.
+    private static BufferedImage readImage(String _resourceName) throws IOException {
+        try (InputStream resource = RenderDaemon.class.getClassLoader().getResourceAsStream(_resourceName)) {
+            if (resource == null) {
+                throw new FileNotFoundException("File " + _resourceName + " not found.");
+            }
+
+            try (ImageInputStream input = ImageIO.createImageInputStream(resource)) {
+                Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+
+                if (!readers.hasNext()) {
+                    throw new IOException("Unsupported image format for " + _resourceName + ".");
+                }
+
+                ImageReader reader = readers.next();
+
+                try {
+                    reader.setInput(input);
+
+                    if (reader.getWidth(0) > MAX_SIZE || reader.getHeight(0) > MAX_SIZE) {
+                        throw new IllegalArgumentException("inputImage must be at most " + MAX_SIZE + "x" + MAX_SIZE + " pixels.");
+                    }
+
+                    return reader.read(0);
+                } finally {
+                    reader.dispose();
+                }
+            }
+        }
+    }
+
+    private FlowSampler getField(FlowField.Type _type, int _width, int _height, boolean _compact) {
+        String key = "field:" + _type + "@" + _width + "x" + _height + (_compact ? ":compact" : "");
+        FlowSampler field = (FlowSampler) this.cache.get(key);
+
+        if (field == null) {
+            if (_compact) {
+                field = AngleFlowField.generate(_width, _height, _type);
+                this.cache.put(key, field, 2L * _width * _height);
+            } else {
+                FlowField vectors = FlowField.generateFlowField(_width, _height, _type);
+                vectors.normalize();
+
+                field = vectors;
+                this.cache.put(key, field, 8L * _width * _height);
+            }
+        }
+
+        return field;
+    }
+
+    private void handleRender(HttpExchange _exchange) throws IOException {
+        try (_exchange) {
+            RenderSpec spec;
+
+            try {
+                String query = _exchange.getRequestURI().getRawQuery();
+
+                if ("POST".equals(_exchange.getRequestMethod())) {
+                    query = new String(_exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+                }
+
+                spec = toSpec(parseQuery(query));
+            } catch (IllegalArgumentException e) {
+                send(_exchange, 400, "text/plain", (e.getMessage() + "\n").getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+
+            String key = getKey(spec);
+            byte[] output = this.getCached(key);
+            boolean hit = (output != null);
+
+            try {
+                if (!hit) {
+                    output = this.renderMissing(spec, key);
+                }
+            } catch (FileNotFoundException e) {
+                send(_exchange, 404, "text/plain", (e.getMessage() + "\n").getBytes(StandardCharsets.UTF_8));
+                return;
+            } catch (IllegalArgumentException e) {
+                send(_exchange, 400, "text/plain", (e.getMessage() + "\n").getBytes(StandardCharsets.UTF_8));
+                return;
+            } catch (IOException | RuntimeException e) {
+                send(_exchange, 500, "text/plain", (e + "\n").getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+
+            _exchange.getResponseHeaders().set("X-Cache", hit ? "HIT" : "MISS");
+            send(_exchange, 200, getContentType(getExtension(spec.getOutput())), output);
+        }
+    }
+
+    private void handleStats(HttpExchange _exchange) throws IOException {
+        try (_exchange) {
+            String stats = "hits=" + this.hits.get() + " misses=" + this.misses.get() + " " + this.cache + "\n";
+            send(_exchange, 200, "text/plain", stats.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static void send(HttpExchange _exchange, int _status, String _contentType, byte[] _body) throws IOException {
+        _exchange.getResponseHeaders().set("Content-Type", _contentType);
+        _exchange.sendResponseHeaders(_status, _body.length);
+        _exchange.getResponseBody().write(_body);
+    }
+
+    private static Map<String, String> parseQuery(String _query) {
+        Map<String, String> params = new LinkedHashMap<>();
+
+        if (_query == null || _query.isBlank()) {
+            return params;
+        }
+
+        for (String pair : _query.trim().split("&")) {
+            int split = pair.indexOf('=');
+
+            if (split < 0) {
+                throw new IllegalArgumentException("Missing value for parameter " + pair + ".");
+            }
+
+            params.put(URLDecoder.decode(pair.substring(0, split), StandardCharsets.UTF_8),
+                    URLDecoder.decode(pair.substring(split + 1), StandardCharsets.UTF_8));
+        }
+
+        return params;
+    }
+
+    private static RenderSpec toSpec(Map<String, String> _params) {
+        String engine = _params.getOrDefault("engine", "fastlic");
+        String format = _params.getOrDefault("format", "jpg");
+
+        getContentType(format);
+
+        RenderSpec spec = switch (engine.toLowerCase()) {
+            case "lic" -> new RenderSpec(RenderSpec.Engine.LIC, "render." + format);
+            case "fastlic", "fast_lic" -> new RenderSpec(RenderSpec.Engine.FAST_LIC, "render." + format);
+            default -> throw new IllegalArgumentException("Unknown engine " + engine + ".");
+        };
+
+        for (Map.Entry<String, String> param : _params.entrySet()) {
+            String value = param.getValue();
+
+            try {
+                switch (param.getKey()) {
+                    case "engine", "format" -> {
+                    }
+                    case "inputImage" -> spec.setInputImage(value);
+                    case "noiseSeed" -> spec.setNoiseSeed(Long.parseLong(value));
+                    case "flowFieldType" -> spec.setFlowFieldType(parseEnum(param.getKey(), FlowField.Type.values(), value));
+                    case "squareFlowFieldSize" -> spec.setSquareFlowFieldSize(Integer.parseInt(value));
+                    case "discreteFilterSize" -> spec.setDiscreteFilterSize(Integer.parseInt(value));
+                    case "lowPassFilterLength" -> spec.setLowPassFilterLength(Float.parseFloat(value));
+                    case "lineSquareClipMax" -> spec.setLineSquareClipMax(Float.parseFloat(value));
+                    case "vectorComponentMinimum" -> spec.setVectorComponentMinimum(Float.parseFloat(value));
+                    case "mode" -> spec.setMode(parseEnum(param.getKey(), FastLICBuilder.Mode.values(), value));
+                    case "streamlineLength" -> spec.setStreamlineLength(Float.parseFloat(value));
+                    case "minimumHits" -> spec.setMinimumHits(Integer.parseInt(value));
+                    case "blurMode" -> spec.setBlurMode(parseEnum(param.getKey(), FastLICBuilder.BlurMode.values(), value));
+                    case "blurRadius" -> spec.setBlurRadius(Integer.parseInt(value));
+                    case "blurSigma" -> spec.setBlurSigma(Float.parseFloat(value));
+                    case "integrator" -> spec.setIntegrator("none".equalsIgnoreCase(value) ? null
+                            : parseEnum(param.getKey(), StreamlineIntegrator.Method.values(), value));
+                    case "integrationStep" -> spec.setIntegrationStep(Float.parseFloat(value));
+                    case "integrationTolerance" -> spec.setIntegrationTolerance(Float.parseFloat(value));
+                    case "parallelism" -> spec.setParallelism(Integer.parseInt(value));
+                    case "compactFlowField" -> spec.setCompactFlowField(parseBoolean(param.getKey(), value));
+                    case "blockedLayout" -> spec.setBlockedLayout(parseBoolean(param.getKey(), value));
+                    default -> throw new IllegalArgumentException("Unknown parameter " + param.getKey() + ".");
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid value " + value + " for parameter " + param.getKey() + ".");
+            }
+        }
+
+        if (spec.getSquareFlowFieldSize() <= 0 || spec.getSquareFlowFieldSize() > MAX_SIZE) {
+            throw new IllegalArgumentException("squareFlowFieldSize must be between 1 and " + MAX_SIZE + ".");
+        }
+
+        if (spec.getDiscreteFilterSize() <= 0 || spec.getDiscreteFilterSize() > MAX_FILTER_SIZE) {
+            throw new IllegalArgumentException("discreteFilterSize must be between 1 and " + MAX_FILTER_SIZE + ".");
+        }
+
+        if (!(spec.getLowPassFilterLength() > 0.0f && spec.getLowPassFilterLength() <= MAX_FILTER_LENGTH)) {
+            throw new IllegalArgumentException("lowPassFilterLength must be positive and at most " + MAX_FILTER_LENGTH + ".");
+        }
+
+        for (String param : _params.keySet()) {
+            if (spec.getEngine() != RenderSpec.Engine.FAST_LIC && FAST_LIC_PARAMETERS.contains(param)) {
+                throw new IllegalArgumentException("Parameter " + param + " is only available with the fastlic engine.");
+            }
+        }
+
+        if (!Float.isFinite(spec.getLineSquareClipMax()) || !Float.isFinite(spec.getVectorComponentMinimum())) {
+            throw new IllegalArgumentException("lineSquareClipMax and vectorComponentMinimum must be finite.");
+        }
+
+        if (!(spec.getStreamlineLength() > 0.0f && spec.getStreamlineLength() <= MAX_FILTER_LENGTH)) {
+            throw new IllegalArgumentException("streamlineLength must be positive and at most " + MAX_FILTER_LENGTH + ".");
+        }
+
+        if (spec.getBlurRadius() > MAX_BLUR_RADIUS) {
+            throw new IllegalArgumentException("blurRadius must be at most " + MAX_BLUR_RADIUS + ".");
+        }
+
+        if (!(spec.getBlurSigma() > 0.0f && Float.isFinite(spec.getBlurSigma()))) {
+            throw new IllegalArgumentException("blurSigma must be positive and finite.");
+        }
+
+        if (!(spec.getIntegrationStep() > 0.0f && Float.isFinite(spec.getIntegrationStep()))
+                || !(spec.getIntegrationTolerance() > 0.0f && Float.isFinite(spec.getIntegrationTolerance()))) {
+            throw new IllegalArgumentException("integrationStep and integrationTolerance must be positive and finite.");
+        }
+
+        if (spec.getParallelism() > Runtime.getRuntime().availableProcessors()) {
+            throw new IllegalArgumentException("parallelism must be at most " + Runtime.getRuntime().availableProcessors() + ".");
+        }
+
+        return spec;
+    }
+
+    private static <T extends Enum<T>> T parseEnum(String _param, T[] _values, String _value) {
+        for (T value : _values) {
+            if (value.name().equalsIgnoreCase(_value)) {
+                return value;
+            }
+        }
+
+        throw new IllegalArgumentException("Unknown value " + _value + " for parameter " + _param + ".");
+    }
+
+    private static boolean parseBoolean(String _param, String _value) {
+        if ("true".equalsIgnoreCase(_value) || "false".equalsIgnoreCase(_value)) {
+            return Boolean.parseBoolean(_value);
+        }
+
+        throw new IllegalArgumentException("Invalid value " + _value + " for parameter " + _param + ".");
+    }
+
+    private static String getExtension(String _filename) {
+        return _filename.substring(_filename.lastIndexOf('.') + 1).toLowerCase();
+    }
+
+    private static String getContentType(String _extension) {
+        return switch (_extension) {
+            case "jpg", "jpeg" -> "image/jpeg";
+            case "pgm" -> "image/x-portable-graymap";
+            case "raw" -> "application/octet-stream";
+            default -> throw new IllegalArgumentException("Unsupported format " + _extension + ".");
+        };
+    }
+
+    private static String getKey(RenderSpec _spec) {
+        String key = _spec.getKey() + "|" + getExtension(_spec.getOutput());
+
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        RenderDaemon daemon = new RenderDaemon().start(port);
+
+        System.out.println("Listening on http://localhost:" + daemon.getPort() + "/render");
+    }
+
+    private static class ResultCache {
+        private final long capacity;
+        private final LinkedHashMap<String, Entry> entries;
+
+        private long size;
+
+        ResultCache(long _capacity) {
+            this.capacity = _capacity;
+            this.entries = new LinkedHashMap<>(16, 0.75f, true);
+            this.size = 0;
+        }
+
+        synchronized Object get(String _key) {
+            Entry entry = this.entries.get(_key);
+            return (entry != null) ? entry.value : null;
+        }
+
+        synchronized void put(String _key, Object _value, long _bytes) {
+            if (_bytes > this.capacity) {
+                return;
+            }
+
+            Entry previous = this.entries.put(_key, new Entry(_value, _bytes));
+
+            if (previous != null) {
+                this.size -= previous.bytes;
+            }
+
+            this.size += _bytes;
+
+            Iterator<Entry> eldest = this.entries.values().iterator();
+
+            while (this.size > this.capacity) {
+                this.size -= eldest.next().bytes;
+                eldest.remove();
+            }
+        }
+
+        @Override
+        public synchronized String toString() {
+            return "entries=" + this.entries.size() + " bytes=" + this.size + " capacity=" + this.capacity;
+        }
+    }
+
+    private static class Entry {
+        private final Object value;
+        private final long bytes;
+
+        Entry(Object _value, long _bytes) {
+            this.value = _value;
+            this.bytes = _bytes;
+        }
+    }
+}
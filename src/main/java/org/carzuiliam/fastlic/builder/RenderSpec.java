@@ -0,0 +1,299 @@
+package org.carzuiliam.fastlic.builder;
+
+import org.carzuiliam.fastlic.utils.FlowField;
+import org.carzuiliam.fastlic.utils.StreamlineIntegrator;
+
+public class RenderSpec {
+
+    public enum Engine {
+        LIC,
+        FAST_LIC
+    }
+
+    private final Engine engine;
+    private final String output;
+
+    private String inputImage;
+    private long noiseSeed;
+    private FlowField.Type flowFieldType;
+    private int squareFlowFieldSize;
+    private int discreteFilterSize;
+    private float lowPassFilterLength;
+    private float lineSquareClipMax;
+    private float vectorComponentMinimum;
+    private FastLICBuilder.Mode mode;
+    private float streamlineLength;
+    private int minimumHits;
+    private FastLICBuilder.BlurMode blurMode;
+    private int blurRadius;
+    private float blurSigma;
+    private StreamlineIntegrator.Method integrator;
+    private float integrationStep;
+    private float integrationTolerance;
+    private int parallelism;
+    private boolean compactFlowField;
+    private boolean blockedLayout;
+
+    public RenderSpec(Engine _engine, String _output) {
+        this.engine = _engine;
+        this.output = _output;
+        this.inputImage = null;
+        this.noiseSeed = 0;
+        this.flowFieldType = FlowField.Type.SADDLE;
+        this.squareFlowFieldSize = 400;
+        this.discreteFilterSize = 2048;
+        this.lowPassFilterLength = 10.0f;
+        this.lineSquareClipMax = 100000.0f;
+        this.vectorComponentMinimum = 0.05f;
+        this.mode = FastLICBuilder.Mode.PER_PIXEL;
+        this.streamlineLength = 100.0f;
+        this.minimumHits = 1;
+        this.blurMode = FastLICBuilder.BlurMode.GAUSSIAN;
+        this.blurRadius = 3;
+        this.blurSigma = 1.0f;
+        this.integrator = null;
+        this.integrationStep = 2.0f;
+        this.integrationTolerance = 0.01f;
+        this.parallelism = Runtime.getRuntime().availableProcessors();
+        this.compactFlowField = false;
+        this.blockedLayout = false;
+    }
+
+    public RenderSpec setInputImage(String _resourceName) {
+        this.inputImage = _resourceName;
+        return this;
+    }
+
+    public RenderSpec setNoiseSeed(long _seed) {
+        this.noiseSeed = _seed;
+        return this;
+    }
+
+    public RenderSpec setFlowFieldType(FlowField.Type _type) {
+        this.flowFieldType = _type;
+        return this;
+    }
+
+    public RenderSpec setSquareFlowFieldSize(int _value) {
+        this.squareFlowFieldSize = _value;
+        return this;
+    }
+
+    public RenderSpec setDiscreteFilterSize(int _value) {
+        this.discreteFilterSize = _value;
+        return this;
+    }
+
+    public RenderSpec setLowPassFilterLength(float _value) {
+        this.lowPassFilterLength = _value;
+        return this;
+    }
+
+    public RenderSpec setLineSquareClipMax(float _value) {
+        this.lineSquareClipMax = _value;
+        return this;
+    }
+
+    public RenderSpec setVectorComponentMinimum(float _value) {
+        this.vectorComponentMinimum = _value;
+        return this;
+    }
+
+    public RenderSpec setMode(FastLICBuilder.Mode _mode) {
+        this.mode = _mode;
+        return this;
+    }
+
+    public RenderSpec setStreamlineLength(float _value) {
+        this.streamlineLength = _value;
+        return this;
+    }
+
+    public RenderSpec setMinimumHits(int _value) {
+        this.minimumHits = Math.max(1, _value);
+        return this;
+    }
+
+    public RenderSpec setBlurMode(FastLICBuilder.BlurMode _mode) {
+        this.blurMode = _mode;
+        return this;
+    }
+
+    public RenderSpec setBlurRadius(int _value) {
+        this.blurRadius = Math.max(0, _value);
+        return this;
+    }
+
+    public RenderSpec setBlurSigma(float _value) {
+        this.blurSigma = _value;
+        return this;
+    }
+
+    public RenderSpec setIntegrator(StreamlineIntegrator.Method _method) {
+        this.integrator = _method;
+        return this;
+    }
+
+    public RenderSpec setIntegrationStep(float _value) {
+        this.integrationStep = _value;
+        return this;
+    }
+
+    public RenderSpec setIntegrationTolerance(float _value) {
+        this.integrationTolerance = _value;
+        return this;
+    }
+
+    public RenderSpec setParallelism(int _value) {
+        this.parallelism = Math.max(1, _value);
+        return this;
+    }
+
+    public RenderSpec setCompactFlowField(boolean _value) {
+        this.compactFlowField = _value;
+        return this;
+    }
+
+    public RenderSpec setBlockedLayout(boolean _value) {
+        this.blockedLayout = _value;
+        return this;
+    }
+
+    public Engine getEngine() {
+        return this.engine;
+    }
+
+    public String getOutput() {
+        return this.output;
+    }
+
+    public String getInputImage() {
+        return this.inputImage;
+    }
+
+    public long getNoiseSeed() {
+        return this.noiseSeed;
+    }
+
+    public FlowField.Type getFlowFieldType() {
+        return this.flowFieldType;
+    }
+
+    public int getSquareFlowFieldSize() {
+        return this.squareFlowFieldSize;
+    }
+
+    public int getDiscreteFilterSize() {
+        return this.discreteFilterSize;
+    }
+
+    public float getLowPassFilterLength() {
+        return this.lowPassFilterLength;
+    }
+
+    public float getLineSquareClipMax() {
+        return this.lineSquareClipMax;
+    }
+
+    public float getVectorComponentMinimum() {
+        return this.vectorComponentMinimum;
+    }
+
+    public FastLICBuilder.Mode getMode() {
+        return this.mode;
+    }
+
+    public float getStreamlineLength() {
+        return this.streamlineLength;
+    }
+
+    public int getMinimumHits() {
+        return this.minimumHits;
+    }
+
+    public FastLICBuilder.BlurMode getBlurMode() {
+        return this.blurMode;
+    }
+
+    public int getBlurRadius() {
+        return this.blurRadius;
+    }
+
+    public float getBlurSigma() {
+        return this.blurSigma;
+    }
+
+    public StreamlineIntegrator.Method getIntegrator() {
+        return this.integrator;
+    }
+
+    public float getIntegrationStep() {
+        return this.integrationStep;
+    }
+
+    public float getIntegrationTolerance() {
+        return this.integrationTolerance;
+    }
+
+    public int getParallelism() {
+        return this.parallelism;
+    }
+
+    public boolean isCompactFlowField() {
+        return this.compactFlowField;
+    }
+
+    public boolean isBlockedLayout() {
+        return this.blockedLayout;
+    }
+
+    // Every parameter that affects the pixels, in a fixed order. The output name, the parallelism and the
+    // blocked layout are left out, since they never change the result.
+    public String getKey() {
+        return this.engine + "|" + this.inputImage + "|" + ((this.inputImage == null) ? this.noiseSeed : 0)
+                + "|" + this.flowFieldType + "|" + ((this.inputImage == null) ? this.squareFlowFieldSize : 0)
+                + "|" + this.discreteFilterSize + "|" + this.lowPassFilterLength
+                + "|" + this.lineSquareClipMax + "|" + this.vectorComponentMinimum
+                + "|" + this.mode + "|" + this.streamlineLength + "|" + this.minimumHits
+                + "|" + this.blurMode + "|" + this.blurRadius + "|" + this.blurSigma
+                + "|" + this.integrator + "|" + this.integrationStep + "|" + this.integrationTolerance
+                + "|" + this.compactFlowField;
+    }
+
+    LICBuilder configure(LICBuilder _builder) {
+        return _builder
+                .setDiscreteFilterSize(this.discreteFilterSize)
+                .setLowPassFilterLength(this.lowPassFilterLength)
+                .setLineSquareClipMax(this.lineSquareClipMax)
+                .setVectorComponentMinimum(this.vectorComponentMinimum)
+                .setIntegrator(this.integrator)
+                .setIntegrationStep(this.integrationStep)
+                .setIntegrationTolerance(this.integrationTolerance)
+                .setParallelism(this.parallelism)
+                .setBlockedLayout(this.blockedLayout);
+    }
+
+    FastLICBuilder configure(FastLICBuilder _builder) {
+        return _builder
+                .setDiscreteFilterSize(this.discreteFilterSize)
+                .setLowPassFilterLength(this.lowPassFilterLength)
+                .setLineSquareClipMax(this.lineSquareClipMax)
+                .setVectorComponentMinimum(this.vectorComponentMinimum)
+                .setMode(this.mode)
+                .setStreamlineLength(this.streamlineLength)
+                .setMinimumHits(this.minimumHits)
+                .setBlurMode(this.blurMode)
+                .setBlurRadius(this.blurRadius)
+                .setBlurSigma(this.blurSigma)
+                .setIntegrator(this.integrator)
+                .setIntegrationStep(this.integrationStep)
+                .setIntegrationTolerance(this.integrationTolerance)
+                .setParallelism(this.parallelism)
+                .setBlockedLayout(this.blockedLayout);
+    }
+
+    @Override
+    public String toString() {
+        return this.engine + " " + this.flowFieldType + " L=" + this.lowPassFilterLength + " -> " + this.output;
+    }
+}
@@ -0,0 +1,23 @@
+package org.carzuiliam.fastlic.builder;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("org.carzuiliam.fastlic.RenderStage")
+@Label("Render Stage")
+@Category("FastLIC")
+@Description("One stage of a LIC render: texture, flow field, plan, trace, blur or encode.")
+public class RenderStageEvent extends Event {
+
+    @Label("Stage")
+    public String stage;
+
+    @Label("Width")
+    public int width;
+
+    @Label("Height")
+    public int height;
+}
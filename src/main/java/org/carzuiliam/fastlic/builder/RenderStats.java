@@ -0,0 +1,147 @@
+package org.carzuiliam.fastlic.builder;
+
+import java.util.Arrays;
+
+public class RenderStats {
+
+    public enum Stage {
+        TEXTURE,
+        FIELD,
+        PLAN,
+        TRACE,
+        BLUR,
+        ENCODE
+    }
+
+    private final int width;
+    private final int height;
+    private final long start;
+    private final long[] stageNanos;
+
+    private long elapsedNanos;
+    private long pixels;
+    private long advections;
+    private long earlyTerminations;
+    private long zeroVectorHits;
+    private long[] stepHistogram;
+
+    public RenderStats(int _width, int _height) {
+        this.width = _width;
+        this.height = _height;
+        this.start = System.nanoTime();
+        this.stageNanos = new long[Stage.values().length];
+        this.stepHistogram = new long[0];
+    }
+
+    public int getWidth() {
+        return this.width;
+    }
+
+    public int getHeight() {
+        return this.height;
+    }
+
+    public synchronized long getStageNanos(Stage _stage) {
+        return this.stageNanos[_stage.ordinal()];
+    }
+
+    public long getElapsedNanos() {
+        return this.elapsedNanos;
+    }
+
+    public synchronized long getPixels() {
+        return this.pixels;
+    }
+
+    public synchronized long getAdvections() {
+        return this.advections;
+    }
+
+    public synchronized long getEarlyTerminations() {
+        return this.earlyTerminations;
+    }
+
+    public synchronized long getZeroVectorHits() {
+        return this.zeroVectorHits;
+    }
+
+    public synchronized long[] getStepHistogram() {
+        return this.stepHistogram.clone();
+    }
+
+    public synchronized double getMeanSteps() {
+        return (this.pixels == 0) ? 0.0 : (double) this.advections / this.pixels;
+    }
+
+    Timer time(Stage _stage) {
+        return new Timer(_stage);
+    }
+
+    synchronized void addNanos(Stage _stage, long _nanos) {
+        this.stageNanos[_stage.ordinal()] += _nanos;
+    }
+
+    synchronized void addTrace(long _pixels, long _advections, long _earlyTerminations, long _zeroVectorHits, int[] _histogram, int _bins) {
+        this.pixels += _pixels;
+        this.advections += _advections;
+        this.earlyTerminations += _earlyTerminations;
+        this.zeroVectorHits += _zeroVectorHits;
+
+        if (this.stepHistogram.length < _bins) {
+            this.stepHistogram = Arrays.copyOf(this.stepHistogram, _bins);
+        }
+
+        for (int k = 0; k < _bins; k++) {
+            this.stepHistogram[k] += _histogram[k];
+        }
+    }
+
+    void finish() {
+        this.elapsedNanos = System.nanoTime() - this.start;
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder builder = new StringBuilder();
+
+        builder.append(this.width).append('x').append(this.height)
+                .append(String.format(" in %.1f ms", this.elapsedNanos / 1e6));
+
+        for (Stage stage : Stage.values()) {
+            long nanos = this.stageNanos[stage.ordinal()];
+
+            if (nanos > 0) {
+                builder.append(String.format(", %s %.1f ms", stage.name().toLowerCase(), nanos / 1e6));
+            }
+        }
+
+        if (this.pixels > 0) {
+            builder.append(String.format(", %.2f steps/px, %d early, %d zero-vector hits",
+                    this.getMeanSteps(), this.earlyTerminations, this.zeroVectorHits));
+        }
+
+        return builder.toString();
+    }
+
+    class Timer implements AutoCloseable {
+        private final Stage stage;
+        private final RenderStageEvent event;
+        private final long begin;
+
+        private Timer(Stage _stage) {
+            this.stage = _stage;
+            this.event = new RenderStageEvent();
+            this.event.stage = _stage.name();
+            this.event.width = RenderStats.this.width;
+            this.event.height = RenderStats.this.height;
+            this.event.begin();
+            this.begin = System.nanoTime();
+        }
+
+        @Override
+        public void close() {
+            RenderStats.this.addNanos(this.stage, System.nanoTime() - this.begin);
+            this.event.commit();
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package org.carzuiliam.fastlic.builder;
+
+import org.carzuiliam.fastlic.utils.Kernels;
+import org.carzuiliam.fastlic.utils.RowWriter;
+import org.carzuiliam.fastlic.utils.TileExecutor;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+class StreamingRenderer {
+
+    static final int BAND_HEIGHT = TileExecutor.DEFAULT_TILE_SIZE;
+
+    interface BandTask {
+        void render(int _y0, int _y1, byte[] _band);
+    }
+
+    static void render(
+            int _width, int _height,
+            float[] _kernel,
+            BandTask _task, RowWriter _writer,
+            LICWorkspace _workspace, RenderStats _stats
+    ) throws IOException {
+        byte[][] bands = _workspace.getStreamBands(BAND_HEIGHT * _width);
+        Future<?>[] pending = new Future<?>[2];
+        RowBlur blur = (_kernel != null) ? new RowBlur(_width, _height, _kernel, _writer, _workspace) : null;
+        RenderStats.Stage rowStage = (blur != null) ? RenderStats.Stage.BLUR : RenderStats.Stage.ENCODE;
+        ExecutorService encoder = _workspace.getEncodeExecutor();
+
+        try (_writer) {
+            for (int y0 = 0, band = 0; y0 < _height; y0 += BAND_HEIGHT, band++) {
+                int slot = band & 1;
+                int start = y0;
+                int end = Math.min(_height, y0 + BAND_HEIGHT);
+                byte[] rows = bands[slot];
+
+                Futures.await(pending[slot]);
+
+                try (RenderStats.Timer ignored = _stats.time(RenderStats.Stage.TRACE)) {
+                    _task.render(start, end, rows);
+                }
+
+                pending[slot] = encoder.submit(() -> {
+                    try (RenderStats.Timer ignored = _stats.time(rowStage)) {
+                        for (int y = start; y < end; y++) {
+                            if (blur != null) {
+                                blur.push(rows, (y - start) * _width);
+                            } else {
+                                _writer.writeRow(rows, (y - start) * _width);
+                            }
+                        }
+                    }
+
+                    return null;
+                });
+            }
+
+            Futures.await(pending[0]);
+            Futures.await(pending[1]);
+
+            try (RenderStats.Timer ignored = _stats.time(RenderStats.Stage.ENCODE)) {
+                _writer.close();
+            }
+        } finally {
+            // The bands belong to the workspace, so a failed render waits out any row task still reading them.
+            Futures.drain(pending[0]);
+            Futures.drain(pending[1]);
+        }
+    }
+
+    private static class RowBlur {
+        private final int width;
+        private final int height;
+        private final int radius;
+        private final int ringSize;
+        private final float[] kernel;
+        private final float weightSum;
+        private final byte[] ring;
+        private final byte[] row;
+        private final int[] rowOffsets;
+        private final Kernels kernels;
+        private final RowWriter writer;
+
+        private int pushed;
+
+        RowBlur(int _width, int _height, float[] _kernel, RowWriter _writer, LICWorkspace _workspace) {
+            float weightSum = 0;
+
+            for (float weight : _kernel) {
+                weightSum += weight;
+            }
+
+            this.width = _width;
+            this.height = _height;
+            this.radius = _kernel.length / 2;
+            this.ringSize = _kernel.length;
+            this.kernel = _kernel;
+            this.weightSum = weightSum;
+            this.ring = _workspace.getStreamRing(this.ringSize * _width);
+            this.row = _workspace.getStreamRow(_width);
+            this.rowOffsets = _workspace.getBlurOffsets(_kernel.length);
+            this.kernels = Kernels.get();
+            this.writer = _writer;
+        }
+
+        void push(byte[] _source, int _offset) throws IOException {
+            int slot = (this.pushed % this.ringSize) * this.width;
+
+            this.kernels.convolveRow(_source, _offset, this.ring, slot, this.width, this.kernel, this.weightSum);
+            this.pushed++;
+
+            if (this.pushed > this.radius) {
+                this.emit(this.pushed - 1 - this.radius);
+            }
+
+            if (this.pushed == this.height) {
+                for (int y = Math.max(0, this.height - this.radius); y < this.height; y++) {
+                    this.emit(y);
+                }
+            }
+        }
+
+        private void emit(int _y) throws IOException {
+            for (int k = -this.radius; k <= this.radius; k++) {
+                int source = Math.min(Math.max(_y + k, 0), this.height - 1);
+                this.rowOffsets[k + this.radius] = (source % this.ringSize) * this.width;
+            }
+
+            this.kernels.convolveColumn(this.ring, this.rowOffsets, this.row, 0, this.width, this.kernel, this.weightSum);
+            this.writer.writeRow(this.row, 0);
+        }
+    }
+}
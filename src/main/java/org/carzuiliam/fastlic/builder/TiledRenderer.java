@@ -0,0 +1,82 @@
+package org.carzuiliam.fastlic.builder;
+
+import org.carzuiliam.fastlic.utils.FlowSampler;
+import org.carzuiliam.fastlic.utils.PGMTileWriter;
+import org.carzuiliam.fastlic.utils.TextureSource;
+import org.carzuiliam.fastlic.utils.TileExecutor;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ForkJoinPool;
+
+class TiledRenderer {
+
+    interface FieldWindow {
+        FlowSampler load(int _x0, int _y0, int _width, int _height);
+    }
+
+    interface WindowTask {
+        void render(int _width, int _height, FlowSampler _field, byte[] _texture, byte[] _image, LICWorkspace _workspace);
+    }
+
+    static void render(
+            ForkJoinPool _pool,
+            int _width, int _height,
+            int _tileSize, int _halo,
+            FieldWindow _field, TextureSource _texture,
+            WindowTask _task,
+            File _output
+    ) throws IOException {
+        // Workspaces are owned by this render: tiles borrow an idle one and the finally block releases them all.
+        List<LICWorkspace> workspaces = new ArrayList<>();
+        ConcurrentLinkedDeque<LICWorkspace> idle = new ConcurrentLinkedDeque<>();
+
+        try (PGMTileWriter writer = new PGMTileWriter(_output, _width, _height)) {
+            TileExecutor.execute(_pool, _width, _height, _tileSize, (x0, y0, x1, y1) -> {
+                int wx0 = Math.max(0, x0 - _halo);
+                int wy0 = Math.max(0, y0 - _halo);
+                int wx1 = Math.min(_width, x1 + _halo);
+                int wy1 = Math.min(_height, y1 + _halo);
+
+                int windowWidth = wx1 - wx0;
+                int windowHeight = wy1 - wy0;
+
+                LICWorkspace workspace = idle.poll();
+
+                if (workspace == null) {
+                    workspace = new LICWorkspace();
+
+                    synchronized (workspaces) {
+                        workspaces.add(workspace);
+                    }
+                }
+
+                byte[] texture = workspace.getTexture(windowWidth * windowHeight);
+                byte[] image = workspace.getOutputImage(windowWidth * windowHeight);
+
+                try {
+                    _texture.read(wx0, wy0, windowWidth, windowHeight, texture);
+
+                    FlowSampler field = _field.load(wx0, wy0, windowWidth, windowHeight);
+                    _task.render(windowWidth, windowHeight, field, texture, image, workspace);
+
+                    writer.writeTile(x0, y0, x1 - x0, y1 - y0, image, (y0 - wy0) * windowWidth + (x0 - wx0), windowWidth);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } finally {
+                    idle.push(workspace);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            for (LICWorkspace workspace : workspaces) {
+                workspace.release();
+            }
+        }
+    }
+}
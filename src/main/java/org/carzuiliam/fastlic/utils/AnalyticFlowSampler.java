@@ -0,0 +1,92 @@
+package org.carzuiliam.fastlic.utils;
+
+public class AnalyticFlowSampler implements FlowSampler {
+
+    private final FlowField.Type type;
+    private final int width;
+    private final int height;
+    private final int x0;
+    private final int y0;
+    private final float cx;
+    private final float cy;
+
+    public AnalyticFlowSampler(int _width, int _height, FlowField.Type _type) {
+        this(_width, _height, 0, 0, _width, _height, _type);
+    }
+
+    public AnalyticFlowSampler(int _fullWidth, int _fullHeight, int _x0, int _y0, int _width, int _height, FlowField.Type _type) {
+        this.type = _type;
+        this.width = _width;
+        this.height = _height;
+        this.x0 = _x0;
+        this.y0 = _y0;
+        this.cx = _fullWidth / 2.0f;
+        this.cy = _fullHeight / 2.0f;
+    }
+
+    @Override
+    public int getWidth() {
+        return this.width;
+    }
+
+    @Override
+    public int getHeight() {
+        return this.height;
+    }
+
+    public FlowField.Type getType() {
+        return this.type;
+    }
+
+    @Override
+    public void sample(int _i, int _j, float[] _out) {
+        this.evaluate((this.x0 + _i) - this.cx, (this.y0 + _j) - this.cy, _out);
+    }
+
+    @Override
+    public void interpolate(float _x, float _y, float[] _out) {
+        this.evaluate(this.x0 + (_x - 0.5f) - this.cx, this.y0 + (_y - 0.5f) - this.cy, _out);
+    }
+
+    private void evaluate(float _x, float _y, float[] _out) {
+        float vx;
+        float vy;
+
+        switch (this.type) {
+            case SADDLE -> {
+                vx = _x;
+                vy = -_y;
+            }
+            case CENTER -> {
+                vx = -_y;
+                vy = _x;
+            }
+            case SOURCE -> {
+                vx = _x;
+                vy = _y;
+            }
+            case SINK -> {
+                vx = -_x;
+                vy = -_y;
+            }
+            case SPIRAL_SOURCE -> {
+                vx = _x - _y;
+                vy = _x + _y;
+            }
+            default -> {
+                vx = -_x - _y;
+                vy = _y - _x;
+            }
+        }
+
+        float mag = (float) Math.sqrt(vx * vx + vy * vy);
+
+        if (mag != 0) {
+            vx = vx / mag;
+            vy = vy / mag;
+        }
+
+        _out[0] = vx;
+        _out[1] = vy;
+    }
+}
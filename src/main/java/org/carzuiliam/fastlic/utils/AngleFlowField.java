@@ -0,0 +1,171 @@
+package org.carzuiliam.fastlic.utils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public class AngleFlowField implements FlowSampler {
+
+    public static final int MAGIC = 0x41574c46;
+    public static final int HEADER_SIZE = 16;
+
+    // Code 0 marks a zero vector; codes 1..65535 are 65535 evenly spaced angles.
+    private static final int LEVELS = 65535;
+    private static final int FRACTION_BITS = 4;
+    private static final int FRACTION_MASK = (1 << FRACTION_BITS) - 1;
+    private static final float STEP = (float) (2.0 * Math.PI / LEVELS);
+    private static final float[] DIRECTIONS = new float[2 * ((LEVELS >>> FRACTION_BITS) + 1)];
+
+    static {
+        for (int k = 0; k < DIRECTIONS.length / 2; k++) {
+            double angle = (double) (k << FRACTION_BITS) * STEP;
+
+            DIRECTIONS[2 * k] = (float) Math.cos(angle);
+            DIRECTIONS[2 * k + 1] = (float) Math.sin(angle);
+        }
+    }
+
+    private final int width;
+    private final int height;
+    private final short[] codes;
+
+    public AngleFlowField(int _width, int _height, short[] _codes) {
+        this.width = _width;
+        this.height = _height;
+        this.codes = _codes;
+    }
+
+    public AngleFlowField(FlowSampler _source) {
+        this(_source.getWidth(), _source.getHeight(), new short[_source.getWidth() * _source.getHeight()]);
+
+        float[] vec = new float[2];
+
+        for (int j = 0; j < this.height; j++) {
+            for (int i = 0; i < this.width; i++) {
+                _source.sample(i, j, vec);
+                this.codes[j * this.width + i] = encode(vec[0], vec[1]);
+            }
+        }
+    }
+
+    public static AngleFlowField generate(int _width, int _height, FlowField.Type _type) {
+        AngleFlowField field = new AngleFlowField(_width, _height, new short[_width * _height]);
+        int band = TileExecutor.DEFAULT_TILE_SIZE;
+
+        for (int y0 = 0; y0 < _height; y0 += band) {
+            int rows = Math.min(band, _height - y0);
+            FlowField window = FlowField.generateFlowField(_width, _height, 0, y0, _width, rows, _type);
+
+            window.normalize();
+
+            for (int k = 0; k < _width * rows; k++) {
+                field.codes[y0 * _width + k] = encode(window.getX(k), window.getY(k));
+            }
+        }
+
+        return field;
+    }
+
+    public static short encode(float _x, float _y) {
+        if (_x == 0 && _y == 0) {
+            return 0;
+        }
+
+        double angle = Math.atan2(_y, _x);
+
+        if (angle < 0) {
+            angle += 2.0 * Math.PI;
+        }
+
+        int level = (int) Math.round(angle / STEP) % LEVELS;
+        return (short) (level + 1);
+    }
+
+    @Override
+    public int getWidth() {
+        return this.width;
+    }
+
+    @Override
+    public int getHeight() {
+        return this.height;
+    }
+
+    public short[] getCodes() {
+        return this.codes;
+    }
+
+    @Override
+    public void sample(int _i, int _j, float[] _out) {
+        int code = Short.toUnsignedInt(this.codes[_j * this.width + _i]);
+
+        if (code == 0) {
+            _out[0] = 0.0f;
+            _out[1] = 0.0f;
+            return;
+        }
+
+        int level = code - 1;
+        int entry = (level >>> FRACTION_BITS) << 1;
+        float delta = (level & FRACTION_MASK) * STEP;
+        float cos = DIRECTIONS[entry];
+        float sin = DIRECTIONS[entry + 1];
+
+        // First-order rotation from the table angle; the error is below 1e-6 for the 16-step gap.
+        _out[0] = cos - delta * sin;
+        _out[1] = sin + delta * cos;
+    }
+
+    public void write(Path _path) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + 2 * this.codes.length).order(ByteOrder.LITTLE_ENDIAN);
+
+        buffer.putInt(MAGIC).putInt(this.width).putInt(this.height).putInt(0);
+        buffer.asShortBuffer().put(this.codes);
+
+        try (OutputStream output = Files.newOutputStream(_path)) {
+            output.write(buffer.array());
+        }
+    }
+
+    public static AngleFlowField read(Path _path) throws IOException {
+        try (FileChannel channel = FileChannel.open(_path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+            readFully(channel, header, _path);
+
+            if (header.getInt() != MAGIC) {
+                throw new IOException("File " + _path + " is not an angle-coded flow field file.");
+            }
+
+            int width = header.getInt();
+            int height = header.getInt();
+
+            if (width <= 0 || height <= 0 || (long) width * height > (Integer.MAX_VALUE - 8) / 2) {
+                throw new IOException("Invalid flow field size " + width + "x" + height + " in " + _path + ".");
+            }
+
+            ByteBuffer data = ByteBuffer.allocate(2 * width * height).order(ByteOrder.LITTLE_ENDIAN);
+            short[] codes = new short[width * height];
+
+            readFully(channel, data, _path);
+            data.asShortBuffer().get(codes);
+
+            return new AngleFlowField(width, height, codes);
+        }
+    }
+
+    private static void readFully(FileChannel _channel, ByteBuffer _buffer, Path _path) throws IOException {
+        while (_buffer.hasRemaining()) {
+            if (_channel.read(_buffer) < 0) {
+                throw new IOException("File " + _path + " is truncated.");
+            }
+        }
+
+        _buffer.flip();
+    }
+}
@@ -0,0 +1,184 @@
+package org.carzuiliam.fastlic.utils;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class AnimationPlan {
+
+    private final int width;
+    private final int height;
+    private final int[] offsets;
+    private final int[] splits;
+    private final int[] indices;
+    private final int[] lutIndices;
+
+    public AnimationPlan(int _width, int _height, int[] _offsets, int[] _splits, int[] _indices, int[] _lutIndices) {
+        this.width = _width;
+        this.height = _height;
+        this.offsets = _offsets;
+        this.splits = _splits;
+        this.indices = _indices;
+        this.lutIndices = _lutIndices;
+    }
+
+    public int getWidth() {
+        return this.width;
+    }
+
+    public int getHeight() {
+        return this.height;
+    }
+
+    public int getEntryCount() {
+        return this.offsets[this.offsets.length - 1];
+    }
+
+    public static void createPhaseLUT(float _ripples, float _phase, boolean _backward, float[] _lut) {
+        int last = _lut.length - 1;
+        float previous = 0.0f;
+
+        _lut[0] = 0.0f;
+
+        for (int k = 0; k <= last; k++) {
+            double s = (double) k / last;
+            double window = 0.5 * (1.0 + Math.cos(Math.PI * s));
+            double ripple = 0.5 * (1.0 + Math.cos(2.0 * Math.PI * _ripples * (_backward ? -s : s) - _phase));
+            float weight = (float) (window * ripple);
+
+            if (k > 0) {
+                _lut[k] = _lut[k - 1] + 0.5f * (previous + weight);
+            }
+
+            previous = weight;
+        }
+    }
+
+    public void apply(byte[] _texture, float[] _lut0, float[] _lut1, byte[] _image, int _x0, int _y0, int _x1, int _y1) {
+        for (int j = _y0; j < _y1; j++) {
+            for (int i = _x0; i < _x1; i++) {
+                int pixel = j * this.width + i;
+                int split = this.splits[pixel];
+
+                float textureAccum = 0.0f;
+                float weight0 = 0.0f;
+                float weight1 = 0.0f;
+
+                for (int k = this.offsets[pixel]; k < split; k++) {
+                    float weightAcc = _lut0[this.lutIndices[k]];
+                    textureAccum += Byte.toUnsignedInt(_texture[this.indices[k]]) * (weightAcc - weight0);
+                    weight0 = weightAcc;
+                }
+
+                for (int k = split; k < this.offsets[pixel + 1]; k++) {
+                    float weightAcc = _lut1[this.lutIndices[k]];
+                    textureAccum += Byte.toUnsignedInt(_texture[this.indices[k]]) * (weightAcc - weight1);
+                    weight1 = weightAcc;
+                }
+
+                float totalWeight = weight0 + weight1;
+                float texVal = (totalWeight > 0.0f) ? textureAccum / totalWeight : 0.0f;
+
+                texVal = Math.max(0.0f, Math.min(255.0f, texVal));
+                _image[pixel] = (byte) texVal;
+            }
+        }
+    }
+
+    public static AnimationPlan assemble(int _width, int _height, List<Recorder> _recorders) {
+        int[] offsets = new int[_width * _height + 1];
+        int[] splits = new int[_width * _height];
+
+        for (Recorder recorder : _recorders) {
+            int pixel = 0;
+
+            for (int j = recorder.y0; j < recorder.y1; j++) {
+                for (int i = recorder.x0; i < recorder.x1; i++) {
+                    offsets[j * _width + i + 1] = recorder.counts[pixel++];
+                }
+            }
+        }
+
+        long total = 0;
+
+        for (int p = 1; p < offsets.length; p++) {
+            total += offsets[p];
+
+            if (total > Integer.MAX_VALUE - 8) {
+                throw new IllegalStateException("Animation plan for " + _width + "x" + _height + " exceeds the maximum entry count.");
+            }
+
+            offsets[p] = (int) total;
+        }
+
+        int[] indices = new int[(int) total];
+        int[] lutIndices = new int[(int) total];
+
+        for (Recorder recorder : _recorders) {
+            int pixel = 0;
+            int source = 0;
+
+            for (int j = recorder.y0; j < recorder.y1; j++) {
+                for (int i = recorder.x0; i < recorder.x1; i++) {
+                    int count = recorder.counts[pixel];
+                    int target = offsets[j * _width + i];
+
+                    splits[j * _width + i] = target + recorder.forwardCounts[pixel];
+                    System.arraycopy(recorder.indices, source, indices, target, count);
+                    System.arraycopy(recorder.lutIndices, source, lutIndices, target, count);
+                    source += count;
+                    pixel++;
+                }
+            }
+        }
+
+        return new AnimationPlan(_width, _height, offsets, splits, indices, lutIndices);
+    }
+
+    public static class Recorder implements SampleRecorder {
+        private final int x0;
+        private final int y0;
+        private final int x1;
+        private final int y1;
+        private final int[] counts;
+        private final int[] forwardCounts;
+
+        private int[] indices;
+        private int[] lutIndices;
+        private int size;
+        private int pixelStart;
+        private int pixel;
+
+        public Recorder(int _x0, int _y0, int _x1, int _y1) {
+            this.x0 = _x0;
+            this.y0 = _y0;
+            this.x1 = _x1;
+            this.y1 = _y1;
+            this.counts = new int[(_x1 - _x0) * (_y1 - _y0)];
+            this.forwardCounts = new int[(_x1 - _x0) * (_y1 - _y0)];
+            this.indices = new int[1024];
+            this.lutIndices = new int[1024];
+        }
+
+        @Override
+        public void add(int _index, int _direction, int _lutIndex, float _weight) {
+            if (this.size == this.indices.length) {
+                this.indices = Arrays.copyOf(this.indices, this.size * 2);
+                this.lutIndices = Arrays.copyOf(this.lutIndices, this.size * 2);
+            }
+
+            if (_direction == 0) {
+                this.forwardCounts[this.pixel]++;
+            }
+
+            this.indices[this.size] = _index;
+            this.lutIndices[this.size] = _lutIndex;
+            this.size++;
+        }
+
+        @Override
+        public void endPixel(float _totalWeight) {
+            this.counts[this.pixel++] = this.size - this.pixelStart;
+            this.pixelStart = this.size;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package org.carzuiliam.fastlic.utils;
+
+public class BlockLayout {
+
+    public static final int DEFAULT_BLOCK_SHIFT = 4;
+
+    private final int width;
+    private final int height;
+    private final int blocksX;
+    private final int blocksY;
+    private final int shift;
+    private final int[] rowBase;
+    private final int[] columnBase;
+
+    public BlockLayout(int _width, int _height, int _shift) {
+        int mask = (1 << _shift) - 1;
+
+        this.width = _width;
+        this.height = _height;
+        this.blocksX = (_width + mask) >> _shift;
+        this.blocksY = (_height + mask) >> _shift;
+        this.shift = _shift;
+        this.rowBase = new int[_height];
+        this.columnBase = new int[_width];
+
+        // index(x, y) = rowBase[y] + columnBase[x]: the block offset and the offset inside the block split by axis.
+        for (int y = 0; y < _height; y++) {
+            this.rowBase[y] = (((y >> _shift) * this.blocksX) << (2 * _shift)) + ((y & mask) << _shift);
+        }
+
+        for (int x = 0; x < _width; x++) {
+            this.columnBase[x] = ((x >> _shift) << (2 * _shift)) + (x & mask);
+        }
+    }
+
+    public int getWidth() {
+        return this.width;
+    }
+
+    public int getHeight() {
+        return this.height;
+    }
+
+    public int getSize() {
+        return (this.blocksX * this.blocksY) << (2 * this.shift);
+    }
+
+    public int index(int _x, int _y) {
+        return this.rowBase[_y] + this.columnBase[_x];
+    }
+
+    public byte[] toBlocked(byte[] _source, byte[] _target) {
+        int block = 1 << this.shift;
+
+        for (int y = 0; y < this.height; y++) {
+            for (int x0 = 0; x0 < this.width; x0 += block) {
+                System.arraycopy(_source, y * this.width + x0, _target, this.index(x0, y), Math.min(block, this.width - x0));
+            }
+        }
+
+        return _target;
+    }
+}
@@ -0,0 +1,42 @@
+package org.carzuiliam.fastlic.utils;
+
+public class BlockedFlowField implements FlowSampler {
+
+    private final BlockLayout layout;
+    private final float[] vectors;
+
+    public BlockedFlowField(FlowSampler _source, BlockLayout _layout) {
+        float[] vec = new float[2];
+
+        this.layout = _layout;
+        this.vectors = new float[2 * _layout.getSize()];
+
+        for (int j = 0; j < _layout.getHeight(); j++) {
+            for (int i = 0; i < _layout.getWidth(); i++) {
+                int index = 2 * _layout.index(i, j);
+
+                _source.sample(i, j, vec);
+                this.vectors[index] = vec[0];
+                this.vectors[index + 1] = vec[1];
+            }
+        }
+    }
+
+    @Override
+    public int getWidth() {
+        return this.layout.getWidth();
+    }
+
+    @Override
+    public int getHeight() {
+        return this.layout.getHeight();
+    }
+
+    @Override
+    public void sample(int _i, int _j, float[] _out) {
+        int index = 2 * this.layout.index(_i, _j);
+
+        _out[0] = this.vectors[index];
+        _out[1] = this.vectors[index + 1];
+    }
+}
@@ -0,0 +1,35 @@
+package org.carzuiliam.fastlic.utils;
+
+public class ByteTexture implements TextureSource {
+
+    private final int width;
+    private final int height;
+    private final byte[] pixels;
+
+    public ByteTexture(int _width, int _height, byte[] _pixels) {
+        this.width = _width;
+        this.height = _height;
+        this.pixels = _pixels;
+    }
+
+    @Override
+    public int getWidth() {
+        return this.width;
+    }
+
+    @Override
+    public int getHeight() {
+        return this.height;
+    }
+
+    public byte[] getPixels() {
+        return this.pixels;
+    }
+
+    @Override
+    public void read(int _x0, int _y0, int _width, int _height, byte[] _out) {
+        for (int j = 0; j < _height; j++) {
+            System.arraycopy(this.pixels, (_y0 + j) * this.width + _x0, _out, j * _width, _width);
+        }
+    }
+}
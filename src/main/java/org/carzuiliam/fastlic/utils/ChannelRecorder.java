@@ -0,0 +1,50 @@
+package org.carzuiliam.fastlic.utils;
+
+public class ChannelRecorder implements SampleRecorder {
+
+    private final byte[][] planes;
+    private final byte[][] outputs;
+    private final float[] accum;
+    private final int width;
+    private final int x0;
+    private final int x1;
+
+    private int x;
+    private int y;
+
+    public ChannelRecorder(byte[][] _planes, byte[][] _outputs, int _width, int _x0, int _y0, int _x1) {
+        this.planes = _planes;
+        this.outputs = _outputs;
+        this.accum = new float[2 * _planes.length];
+        this.width = _width;
+        this.x0 = _x0;
+        this.x1 = _x1;
+        this.x = _x0;
+        this.y = _y0;
+    }
+
+    @Override
+    public void add(int _texIdx, int _direction, int _lutIndex, float _weight) {
+        for (int c = 0; c < this.planes.length; c++) {
+            this.accum[2 * c + _direction] += Byte.toUnsignedInt(this.planes[c][_texIdx]) * _weight;
+        }
+    }
+
+    @Override
+    public void endPixel(float _totalWeight) {
+        int pixel = this.y * this.width + this.x;
+
+        for (int c = 0; c < this.planes.length; c++) {
+            float value = (this.accum[2 * c] + this.accum[2 * c + 1]) / _totalWeight;
+
+            this.outputs[c][pixel] = (byte) Math.max(0.0f, Math.min(255.0f, value));
+            this.accum[2 * c] = 0.0f;
+            this.accum[2 * c + 1] = 0.0f;
+        }
+
+        if (++this.x == this.x1) {
+            this.x = this.x0;
+            this.y++;
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package org.carzuiliam.fastlic.utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+public class ConvolutionPlan {
+
+    private static final int MAGIC = 0x4e414c50;
+
+    private final int width;
+    private final int height;
+    private final int[] offsets;
+    private final int[] indices;
+    private final float[] weights;
+
+    public ConvolutionPlan(int _width, int _height, int[] _offsets, int[] _indices, float[] _weights) {
+        this.width = _width;
+        this.height = _height;
+        this.offsets = _offsets;
+        this.indices = _indices;
+        this.weights = _weights;
+    }
+
+    public int getWidth() {
+        return this.width;
+    }
+
+    public int getHeight() {
+        return this.height;
+    }
+
+    public int getEntryCount() {
+        return this.offsets[this.offsets.length - 1];
+    }
+
+    public void apply(byte[] _texture, byte[] _image, int _x0, int _y0, int _x1, int _y1) {
+        for (int j = _y0; j < _y1; j++) {
+            for (int i = _x0; i < _x1; i++) {
+                int pixel = j * this.width + i;
+                float texVal = 0.0f;
+
+                for (int k = this.offsets[pixel]; k < this.offsets[pixel + 1]; k++) {
+                    texVal += Byte.toUnsignedInt(_texture[this.indices[k]]) * this.weights[k];
+                }
+
+                texVal = Math.max(0.0f, Math.min(255.0f, texVal));
+                _image[pixel] = (byte) texVal;
+            }
+        }
+    }
+
+    public void write(Path _path) throws IOException {
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(_path)))) {
+            output.writeInt(MAGIC);
+            output.writeInt(this.width);
+            output.writeInt(this.height);
+            output.writeInt(this.getEntryCount());
+
+            for (int offset : this.offsets) {
+                output.writeInt(offset);
+            }
+
+            for (int k = 0; k < this.getEntryCount(); k++) {
+                output.writeInt(this.indices[k]);
+                output.writeFloat(this.weights[k]);
+            }
+        }
+    }
+
+    public static ConvolutionPlan read(Path _path) throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(_path)))) {
+            if (input.readInt() != MAGIC) {
+                throw new IOException("File " + _path + " is not a convolution plan.");
+            }
+
+            int width = input.readInt();
+            int height = input.readInt();
+            int count = input.readInt();
+
+            if (width <= 0 || height <= 0 || (long) width * height > Integer.MAX_VALUE - 8 || count < 0) {
+                throw new IOException("File " + _path + " has an invalid plan header.");
+            }
+
+            int[] offsets = new int[width * height + 1];
+            int[] indices = new int[count];
+            float[] weights = new float[count];
+
+            for (int p = 0; p < offsets.length; p++) {
+                offsets[p] = input.readInt();
+
+                if (offsets[p] < ((p == 0) ? 0 : offsets[p - 1]) || offsets[p] > count) {
+                    throw new IOException("File " + _path + " has a non-monotonic or out-of-range offset at pixel " + p + ".");
+                }
+            }
+
+            if (offsets[0] != 0 || offsets[offsets.length - 1] != count) {
+                throw new IOException("File " + _path + " has offsets that do not span its " + count + " entries.");
+            }
+
+            for (int k = 0; k < count; k++) {
+                indices[k] = input.readInt();
+                weights[k] = input.readFloat();
+
+                if (indices[k] < 0 || indices[k] >= width * height) {
+                    throw new IOException("File " + _path + " has an out-of-range texture index at entry " + k + ".");
+                }
+            }
+
+            return new ConvolutionPlan(width, height, offsets, indices, weights);
+        }
+    }
+
+    public static ConvolutionPlan assemble(int _width, int _height, List<Recorder> _recorders) {
+        int[] offsets = new int[_width * _height + 1];
+
+        for (Recorder recorder : _recorders) {
+            int pixel = 0;
+
+            for (int j = recorder.y0; j < recorder.y1; j++) {
+                for (int i = recorder.x0; i < recorder.x1; i++) {
+                    offsets[j * _width + i + 1] = recorder.counts[pixel++];
+                }
+            }
+        }
+
+        long total = 0;
+
+        for (int p = 1; p < offsets.length; p++) {
+            total += offsets[p];
+
+            if (total > Integer.MAX_VALUE - 8) {
+                throw new IllegalStateException("Convolution plan for " + _width + "x" + _height + " exceeds the maximum entry count.");
+            }
+
+            offsets[p] = (int) total;
+        }
+
+        int[] indices = new int[(int) total];
+        float[] weights = new float[(int) total];
+
+        for (Recorder recorder : _recorders) {
+            int pixel = 0;
+            int source = 0;
+
+            for (int j = recorder.y0; j < recorder.y1; j++) {
+                for (int i = recorder.x0; i < recorder.x1; i++) {
+                    int count = recorder.counts[pixel++];
+                    int target = offsets[j * _width + i];
+
+                    System.arraycopy(recorder.indices, source, indices, target, count);
+                    System.arraycopy(recorder.weights, source, weights, target, count);
+                    source += count;
+                }
+            }
+        }
+
+        return new ConvolutionPlan(_width, _height, offsets, indices, weights);
+    }
+
+    public static class Recorder implements SampleRecorder {
+        private final int x0;
+        private final int y0;
+        private final int x1;
+        private final int y1;
+        private final int[] counts;
+
+        private int[] indices;
+        private float[] weights;
+        private int size;
+        private int pixelStart;
+        private int pixel;
+
+        public Recorder(int _x0, int _y0, int _x1, int _y1) {
+            this.x0 = _x0;
+            this.y0 = _y0;
+            this.x1 = _x1;
+            this.y1 = _y1;
+            this.counts = new int[(_x1 - _x0) * (_y1 - _y0)];
+            this.indices = new int[1024];
+            this.weights = new float[1024];
+        }
+
+        @Override
+        public void add(int _index, int _direction, int _lutIndex, float _weight) {
+            if (_weight == 0.0f) {
+                return;
+            }
+
+            if (this.size == this.indices.length) {
+                this.indices = Arrays.copyOf(this.indices, this.size * 2);
+                this.weights = Arrays.copyOf(this.weights, this.size * 2);
+            }
+
+            this.indices[this.size] = _index;
+            this.weights[this.size] = _weight;
+            this.size++;
+        }
+
+        @Override
+        public void endPixel(float _totalWeight) {
+            for (int k = this.pixelStart; k < this.size; k++) {
+                this.weights[k] /= _totalWeight;
+            }
+
+            this.counts[this.pixel++] = this.size - this.pixelStart;
+            this.pixelStart = this.size;
+        }
+    }
+}
@@ -1,6 +1,6 @@
 package org.carzuiliam.fastlic.utils;
 
-public class FlowField {
+public class FlowField implements FlowSampler {
 
     public enum Type {
         SADDLE,
@@ -11,54 +11,124 @@ public class FlowField {
         SPIRAL_SINK
     }
 
-    public static Vector2D[] generateFlowField(int width, int height, Type type) {
-        Vector2D[] flowField = new Vector2D[width * height];
+    private final int width;
+    private final int height;
+    private final float[] vx;
+    private final float[] vy;
 
-        float cx = width / 2.0f;
-        float cy = height / 2.0f;
+    public FlowField(int _width, int _height) {
+        this.width = _width;
+        this.height = _height;
+        this.vx = new float[_width * _height];
+        this.vy = new float[_width * _height];
+    }
 
-        for (int j = 0; j < height; j++) {
-            for (int i = 0; i < width; i++) {
-                float x = i - cx;
-                float y = j - cy;
-
-                Vector2D vector = switch (type) {
-                    case SADDLE -> saddle(x, y);
-                    case CENTER -> center(x, y);
-                    case SOURCE -> source(x, y);
-                    case SINK -> sink(x, y);
-                    case SPIRAL_SOURCE -> spiralSource(x, y);
-                    case SPIRAL_SINK -> spiralSink(x, y);
-                };
-
-                flowField[j * width + i] = vector;
-            }
-        }
+    @Override
+    public int getWidth() {
+        return this.width;
+    }
 
-        return flowField;
+    @Override
+    public int getHeight() {
+        return this.height;
+    }
+
+    public float[] getVX() {
+        return this.vx;
+    }
+
+    public float[] getVY() {
+        return this.vy;
+    }
+
+    public float getX(int _index) {
+        return this.vx[_index];
+    }
+
+    public float getY(int _index) {
+        return this.vy[_index];
+    }
+
+    public void set(int _index, float _x, float _y) {
+        this.vx[_index] = _x;
+        this.vy[_index] = _y;
+    }
+
+    @Override
+    public void sample(int _i, int _j, float[] _out) {
+        int index = _j * this.width + _i;
+
+        _out[0] = this.vx[index];
+        _out[1] = this.vy[index];
     }
 
-    private static Vector2D saddle(float x, float y) {
-        return new Vector2D(x, -y);
+    public Vector2D getVector(int _i, int _j) {
+        int index = _j * this.width + _i;
+        return new Vector2D(this.vx[index], this.vy[index]);
     }
 
-    private static Vector2D center(float x, float y) {
-        return new Vector2D(-y, x);
+    public static FlowField copyWindow(FlowSampler _source, int _x0, int _y0, int _width, int _height) {
+        FlowField window = new FlowField(_width, _height);
+        float[] vec = new float[2];
+
+        for (int j = 0; j < _height; j++) {
+            for (int i = 0; i < _width; i++) {
+                _source.sample(_x0 + i, _y0 + j, vec);
+                window.set(j * _width + i, vec[0], vec[1]);
+            }
+        }
+
+        return window;
     }
 
-    private static Vector2D source(float x, float y) {
-        return new Vector2D(x, y);
+    public static FlowField downsample(FlowSampler _source) {
+        int sourceWidth = _source.getWidth();
+        int sourceHeight = _source.getHeight();
+        FlowField field = new FlowField(Math.max(1, sourceWidth / 2), Math.max(1, sourceHeight / 2));
+        float[] vec = new float[2];
+
+        for (int j = 0; j < field.height; j++) {
+            for (int i = 0; i < field.width; i++) {
+                float x = 0.0f;
+                float y = 0.0f;
+
+                for (int k = 0; k < 4; k++) {
+                    _source.sample(Math.min(2 * i + (k & 1), sourceWidth - 1), Math.min(2 * j + (k >> 1), sourceHeight - 1), vec);
+                    x += vec[0];
+                    y += vec[1];
+                }
+
+                field.set(j * field.width + i, x, y);
+            }
+        }
+
+        field.normalize();
+        return field;
     }
 
-    private static Vector2D sink(float x, float y) {
-        return new Vector2D(-x, -y);
+    public void normalize() {
+        Kernels.get().normalize(this.vx, this.vy, 0, this.vx.length);
     }
 
-    private static Vector2D spiralSource(float x, float y) {
-        return new Vector2D(x - y, x + y);
+    public static FlowField generateFlowField(int width, int height, Type type) {
+        return generateFlowField(width, height, 0, 0, width, height, type);
     }
 
-    private static Vector2D spiralSink(float x, float y) {
-        return new Vector2D(-x - y, y - x);
+    public static FlowField generateFlowField(int fullWidth, int fullHeight, int x0, int y0, int width, int height, Type type) {
+        FlowField flowField = new FlowField(width, height);
+        float[] vx = flowField.vx;
+        float[] vy = flowField.vy;
+
+        float cx = fullWidth / 2.0f;
+        float cy = fullHeight / 2.0f;
+
+        Kernels kernels = Kernels.get();
+
+        for (int j = 0; j < height; j++) {
+            float y = (y0 + j) - cy;
+            kernels.fillRow(type, vx, vy, j * width, x0, cx, y, width);
+        }
+
+        return flowField;
     }
 }
@@ -0,0 +1,60 @@
+package org.carzuiliam.fastlic.utils;
+
+public interface FlowSampler {
+
+    int getWidth();
+
+    int getHeight();
+
+    // Writes the unit direction of cell (i, j) into _out[0] and _out[1]; (0, 0) marks a critical point.
+    void sample(int _i, int _j, float[] _out);
+
+    // Bilinear direction at continuous position (x, y), with cell (i, j) centred on (i + 0.5, j + 0.5).
+    default void interpolate(float _x, float _y, float[] _out) {
+        int width = this.getWidth();
+        int height = this.getHeight();
+
+        float gx = Math.max(0.0f, Math.min(_x - 0.5f, width - 1));
+        float gy = Math.max(0.0f, Math.min(_y - 0.5f, height - 1));
+
+        int ix = Math.max(0, Math.min((int) gx, width - 2));
+        int iy = Math.max(0, Math.min((int) gy, height - 2));
+        int ix1 = Math.min(ix + 1, width - 1);
+        int iy1 = Math.min(iy + 1, height - 1);
+
+        float fx = gx - ix;
+        float fy = gy - iy;
+
+        this.sample(ix, iy, _out);
+        float x00 = _out[0];
+        float y00 = _out[1];
+
+        this.sample(ix1, iy, _out);
+        float x10 = _out[0];
+        float y10 = _out[1];
+
+        this.sample(ix, iy1, _out);
+        float x01 = _out[0];
+        float y01 = _out[1];
+
+        this.sample(ix1, iy1, _out);
+        float x11 = _out[0];
+        float y11 = _out[1];
+
+        float top = x00 + (x10 - x00) * fx;
+        float x = top + (x01 + (x11 - x01) * fx - top) * fy;
+
+        top = y00 + (y10 - y00) * fx;
+        float y = top + (y01 + (y11 - y01) * fx - top) * fy;
+
+        float mag = (float) Math.sqrt(x * x + y * y);
+
+        if (mag != 0) {
+            x = x / mag;
+            y = y / mag;
+        }
+
+        _out[0] = x;
+        _out[1] = y;
+    }
+}
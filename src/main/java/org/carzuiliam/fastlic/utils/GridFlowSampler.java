@@ -0,0 +1,90 @@
+package org.carzuiliam.fastlic.utils;
+
+public class GridFlowSampler implements FlowSampler {
+
+    private final FlowField grid;
+    private final int width;
+    private final int height;
+    private final float scaleX;
+    private final float scaleY;
+
+    public GridFlowSampler(FlowField _grid, int _width, int _height) {
+        this.grid = _grid;
+        this.width = _width;
+        this.height = _height;
+        this.scaleX = (float) _grid.getWidth() / _width;
+        this.scaleY = (float) _grid.getHeight() / _height;
+    }
+
+    @Override
+    public int getWidth() {
+        return this.width;
+    }
+
+    @Override
+    public int getHeight() {
+        return this.height;
+    }
+
+    public FlowField getGrid() {
+        return this.grid;
+    }
+
+    @Override
+    public void sample(int _i, int _j, float[] _out) {
+        this.interpolate(_i + 0.5f, _j + 0.5f, _out);
+    }
+
+    @Override
+    public void interpolate(float _x, float _y, float[] _out) {
+        int gridWidth = this.grid.getWidth();
+        int gridHeight = this.grid.getHeight();
+
+        float gx = Math.max(0.0f, Math.min(_x * this.scaleX - 0.5f, gridWidth - 1));
+        float gy = Math.max(0.0f, Math.min(_y * this.scaleY - 0.5f, gridHeight - 1));
+
+        int ix = Math.min((int) gx, gridWidth - 2);
+        int iy = Math.min((int) gy, gridHeight - 2);
+        int ix1 = ix + 1;
+        int iy1 = iy + 1;
+
+        if (gridWidth == 1) {
+            ix = 0;
+            ix1 = 0;
+        }
+
+        if (gridHeight == 1) {
+            iy = 0;
+            iy1 = 0;
+        }
+
+        float fx = gx - ix;
+        float fy = gy - iy;
+
+        float[] vx = this.grid.getVX();
+        float[] vy = this.grid.getVY();
+
+        int k00 = iy * gridWidth + ix;
+        int k10 = iy * gridWidth + ix1;
+        int k01 = iy1 * gridWidth + ix;
+        int k11 = iy1 * gridWidth + ix1;
+
+        float top = vx[k00] + (vx[k10] - vx[k00]) * fx;
+        float bottom = vx[k01] + (vx[k11] - vx[k01]) * fx;
+        float x = top + (bottom - top) * fy;
+
+        top = vy[k00] + (vy[k10] - vy[k00]) * fx;
+        bottom = vy[k01] + (vy[k11] - vy[k01]) * fx;
+        float y = top + (bottom - top) * fy;
+
+        float mag = (float) Math.sqrt(x * x + y * y);
+
+        if (mag != 0) {
+            x = x / mag;
+            y = y / mag;
+        }
+
+        _out[0] = x;
+        _out[1] = y;
+    }
+}
@@ -0,0 +1,27 @@
+package org.carzuiliam.fastlic.utils;
+
+import java.awt.image.BufferedImage;
+
+public class ImageTexture implements TextureSource {
+
+    private final BufferedImage image;
+
+    public ImageTexture(BufferedImage _image) {
+        this.image = _image;
+    }
+
+    @Override
+    public int getWidth() {
+        return this.image.getWidth();
+    }
+
+    @Override
+    public int getHeight() {
+        return this.image.getHeight();
+    }
+
+    @Override
+    public void read(int _x0, int _y0, int _width, int _height, byte[] _out) {
+        ImageUtils.readImageRegion(this.image, _x0, _y0, _width, _height, _out);
+    }
+}
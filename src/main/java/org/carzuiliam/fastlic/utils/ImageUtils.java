@@ -2,43 +2,328 @@ package org.carzuiliam.fastlic.utils;
 
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 
 public class ImageUtils {
 
+    private static final byte[] IDENTITY = new byte[256];
+    private static final byte[] GRAY_TO_RGB = new byte[256];
+    private static final byte[] RGB_TO_GRAY = new byte[256];
+
+    static {
+        BufferedImage probe = new BufferedImage(256, 1, BufferedImage.TYPE_BYTE_GRAY);
+        WritableRaster raster = probe.getRaster();
+
+        for (int v = 0; v < 256; v++) {
+            IDENTITY[v] = (byte) v;
+            raster.setSample(v, 0, 0, v);
+            GRAY_TO_RGB[v] = (byte) (probe.getRGB(v, 0) >> 16);
+        }
+
+        for (int v = 0; v < 256; v++) {
+            probe.setRGB(v, 0, (v << 16) | (v << 8) | v);
+            RGB_TO_GRAY[v] = (byte) raster.getSample(v, 0, 0);
+        }
+    }
+
     public static byte[] readImageToByteArray(BufferedImage _image) {
+        return readImageToByteArray(_image, new byte[_image.getWidth() * _image.getHeight()]);
+    }
+
+    public static byte[] readImageToByteArray(BufferedImage _image, byte[] _data) {
+        readImageRegion(_image, 0, 0, _image.getWidth(), _image.getHeight(), _data);
+        return _data;
+    }
+
+    public static void readImageRegion(BufferedImage _image, int _x0, int _y0, int _width, int _height, byte[] _data) {
+        byte[] lut = switch (_image.getType()) {
+            case BufferedImage.TYPE_BYTE_GRAY -> GRAY_TO_RGB;
+            case BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_4BYTE_ABGR -> IDENTITY;
+            default -> null;
+        };
+
+        Raster raster = _image.getRaster();
+
+        if (lut != null
+                && raster.getDataBuffer() instanceof DataBufferByte buffer
+                && raster.getSampleModel() instanceof ComponentSampleModel model) {
+            byte[] pixels = buffer.getData();
+            int pixelStride = model.getPixelStride();
+            int scanlineStride = model.getScanlineStride();
+            int base = buffer.getOffset() + model.getOffset(
+                    _x0 - raster.getSampleModelTranslateX(),
+                    _y0 - raster.getSampleModelTranslateY(),
+                    0
+            );
+
+            for (int y = 0; y < _height; y++) {
+                int src = base + y * scanlineStride;
+                int dst = y * _width;
+
+                for (int x = 0; x < _width; x++) {
+                    _data[dst + x] = lut[pixels[src + x * pixelStride] & 0xff];
+                }
+            }
+
+            return;
+        }
+
+        for (int y = 0; y < _height; y++) {
+            for (int x = 0; x < _width; x++) {
+                int rgb = _image.getRGB(_x0 + x, _y0 + y);
+                int gray = (rgb >> 16) & 0xff;
+
+                _data[y * _width + x] = (byte) gray;
+            }
+        }
+    }
+
+    public static byte[][] readImageChannels(BufferedImage _image) {
         int width = _image.getWidth();
         int height = _image.getHeight();
-        byte[] data = new byte[width * height];
+        byte[][] planes = new byte[3][width * height];
+        int[] row = new int[width];
 
         for (int y = 0; y < height; y++) {
+            _image.getRGB(0, y, width, 1, row, 0, width);
+
             for (int x = 0; x < width; x++) {
-                int rgb = _image.getRGB(x, y);
-                int gray = (rgb >> 16) & 0xff;
+                planes[0][y * width + x] = (byte) (row[x] >> 16);
+                planes[1][y * width + x] = (byte) (row[x] >> 8);
+                planes[2][y * width + x] = (byte) row[x];
+            }
+        }
+
+        return planes;
+    }
+
+    public static void writeChannels(int _width, int _height, byte[][] _channels, String _filename) throws IOException {
+        if (_channels.length == 1) {
+            writeByteArray(_width, _height, _channels[0], _filename);
+            return;
+        }
+
+        if (_channels.length != 3) {
+            int dot = _filename.lastIndexOf('.');
+            String base = (dot >= 0) ? _filename.substring(0, dot) : _filename;
+            String extension = (dot >= 0) ? _filename.substring(dot) : "";
+
+            for (int c = 0; c < _channels.length; c++) {
+                writeByteArray(_width, _height, _channels[c], base + "-" + c + extension);
+            }
+            return;
+        }
+
+        String name = _filename.toLowerCase();
+
+        if (name.endsWith(".ppm") || name.endsWith(".raw")) {
+            try (OutputStream output = new BufferedOutputStream(new FileOutputStream(getOutputFile(_filename)))) {
+                byte[] row = new byte[3 * _width];
+
+                if (name.endsWith(".ppm")) {
+                    output.write(("P6\n" + _width + " " + _height + "\n255\n").getBytes(StandardCharsets.US_ASCII));
+                }
+
+                for (int y = 0; y < _height; y++) {
+                    for (int x = 0; x < _width; x++) {
+                        row[3 * x] = _channels[0][y * _width + x];
+                        row[3 * x + 1] = _channels[1][y * _width + x];
+                        row[3 * x + 2] = _channels[2][y * _width + x];
+                    }
+
+                    output.write(row);
+                }
+            }
+            return;
+        }
+
+        BufferedImage img = new BufferedImage(_width, _height, BufferedImage.TYPE_3BYTE_BGR);
+        byte[] pixels = ((DataBufferByte) img.getRaster().getDataBuffer()).getData();
+
+        for (int k = 0; k < _width * _height; k++) {
+            pixels[3 * k] = _channels[2][k];
+            pixels[3 * k + 1] = _channels[1][k];
+            pixels[3 * k + 2] = _channels[0][k];
+        }
+
+        ImageIO.write(img, "jpg", getOutputFile(_filename));
+    }
+
+    public static byte[] downsample(int _width, int _height, byte[] _image) {
+        int width = Math.max(1, _width / 2);
+        int height = Math.max(1, _height / 2);
+        byte[] output = new byte[width * height];
 
-                data[y * width + x] = (byte) gray;
+        for (int j = 0; j < height; j++) {
+            int row0 = Math.min(2 * j, _height - 1) * _width;
+            int row1 = Math.min(2 * j + 1, _height - 1) * _width;
+
+            for (int i = 0; i < width; i++) {
+                int x0 = Math.min(2 * i, _width - 1);
+                int x1 = Math.min(2 * i + 1, _width - 1);
+                int sum = (_image[row0 + x0] & 0xff) + (_image[row0 + x1] & 0xff) + (_image[row1 + x0] & 0xff) + (_image[row1 + x1] & 0xff);
+
+                output[j * width + i] = (byte) ((sum + 2) >> 2);
             }
         }
 
-        return data;
+        return output;
+    }
+
+    public static File getOutputFile(String _filename) {
+        File outputFile = new File("target/output", _filename);
+        outputFile.getParentFile().mkdirs();
+
+        return outputFile;
+    }
+
+    public static void writeByteArray(int _width, int _height, byte[] _image, String _filename) throws IOException {
+        String name = _filename.toLowerCase();
+
+        if (name.endsWith(".pgm")) {
+            writeByteArrayToPGM(_width, _height, _image, _filename);
+        } else if (name.endsWith(".raw")) {
+            writeByteArrayToRaw(_width, _height, _image, _filename);
+        } else {
+            writeByteArrayToJPG(_width, _height, _image, _filename);
+        }
+    }
+
+    public static void writeByteArray(int _width, int _height, byte[] _image, String _filename, OutputStream _output) throws IOException {
+        if (_output == null) {
+            writeByteArray(_width, _height, _image, _filename);
+            return;
+        }
+
+        String format = getFormat(_filename);
+
+        if (format.equals("pgm")) {
+            _output.write(createPGMHeader(_width, _height));
+            _output.write(_image, 0, _width * _height);
+        } else if (format.equals("raw")) {
+            _output.write(_image, 0, _width * _height);
+        } else {
+            ImageIO.write(toGrayImage(_width, _height, _image), "jpg", _output);
+        }
+    }
+
+    public static RowWriter openRowWriter(int _width, int _height, String _filename) throws IOException {
+        String name = _filename.toLowerCase();
+
+        if (name.endsWith(".pgm")) {
+            return new StreamRowWriter(getOutputFile(_filename), _width, createPGMHeader(_width, _height));
+        } else if (name.endsWith(".raw")) {
+            return new StreamRowWriter(getOutputFile(_filename), _width, null);
+        } else {
+            return new JPGRowWriter(_width, _height, getOutputFile(_filename), null);
+        }
+    }
+
+    public static RowWriter openRowWriter(int _width, int _height, String _filename, OutputStream _output) throws IOException {
+        if (_output == null) {
+            return openRowWriter(_width, _height, _filename);
+        }
+
+        String format = getFormat(_filename);
+
+        if (format.equals("pgm")) {
+            return new StreamRowWriter(_output, _width, createPGMHeader(_width, _height));
+        } else if (format.equals("raw")) {
+            return new StreamRowWriter(_output, _width, null);
+        } else {
+            return new JPGRowWriter(_width, _height, null, _output);
+        }
+    }
+
+    // Accepts a bare format name ("pgm") as well as a file name ("render.pgm").
+    private static String getFormat(String _filename) {
+        String name = _filename.toLowerCase();
+        return name.substring(name.lastIndexOf('.') + 1);
     }
 
     public static void writeByteArrayToJPG(int _width, int _height, byte[] _image, String _filename) throws IOException {
-        String outputDir = "target/output";
-        new File(outputDir).mkdirs();
+        ImageIO.write(toGrayImage(_width, _height, _image), "jpg", getOutputFile(_filename));
+    }
 
-        File outputFile = new File(outputDir, _filename);
+    private static BufferedImage toGrayImage(int _width, int _height, byte[] _image) {
         BufferedImage img = new BufferedImage(_width, _height, BufferedImage.TYPE_BYTE_GRAY);
+        byte[] pixels = ((DataBufferByte) img.getRaster().getDataBuffer()).getData();
 
-        for (int y = 0; y < _height; y++) {
-            for (int x = 0; x < _width; x++) {
-                int value = Byte.toUnsignedInt(_image[y * _width + x]);
-                int rgb = (value << 16) | (value << 8) | value;
-                img.setRGB(x, y, rgb);
+        for (int k = 0; k < _width * _height; k++) {
+            pixels[k] = RGB_TO_GRAY[_image[k] & 0xff];
+        }
+
+        return img;
+    }
+
+    public static void writeByteArrayToPGM(int _width, int _height, byte[] _image, String _filename) throws IOException {
+        try (OutputStream output = new BufferedOutputStream(new FileOutputStream(getOutputFile(_filename)))) {
+            output.write(createPGMHeader(_width, _height));
+            output.write(_image, 0, _width * _height);
+        }
+    }
+
+    public static byte[] createPGMHeader(int _width, int _height) {
+        return ("P5\n" + _width + " " + _height + "\n255\n").getBytes(StandardCharsets.US_ASCII);
+    }
+
+    public static void writeByteArrayToRaw(int _width, int _height, byte[] _image, String _filename) throws IOException {
+        try (OutputStream output = new FileOutputStream(getOutputFile(_filename))) {
+            output.write(_image, 0, _width * _height);
+        }
+    }
+
+    private static class JPGRowWriter implements RowWriter {
+        private final BufferedImage image;
+        private final byte[] pixels;
+        private final int width;
+        private final File file;
+        private final OutputStream output;
+        private int offset;
+        private boolean closed;
+
+        JPGRowWriter(int _width, int _height, File _file, OutputStream _output) {
+            this.image = new BufferedImage(_width, _height, BufferedImage.TYPE_BYTE_GRAY);
+            this.pixels = ((DataBufferByte) this.image.getRaster().getDataBuffer()).getData();
+            this.width = _width;
+            this.file = _file;
+            this.output = _output;
+        }
+
+        @Override
+        public void writeRow(byte[] _row, int _offset) {
+            for (int x = 0; x < this.width; x++) {
+                this.pixels[this.offset++] = RGB_TO_GRAY[_row[_offset + x] & 0xff];
             }
         }
 
-        ImageIO.write(img, "jpg", outputFile);
+        @Override
+        public void close() throws IOException {
+            if (this.closed) {
+                return;
+            }
+
+            this.closed = true;
+
+            // An interrupted or cancelled render leaves no half-written image behind.
+            if (this.offset < this.pixels.length) {
+                return;
+            }
+
+            if (this.output != null) {
+                ImageIO.write(this.image, "jpg", this.output);
+            } else {
+                ImageIO.write(this.image, "jpg", this.file);
+            }
+        }
     }
 }
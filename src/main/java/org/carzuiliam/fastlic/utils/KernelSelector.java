@@ -0,0 +1,21 @@
+package org.carzuiliam.fastlic.utils;
+
+class KernelSelector {
+
+    static final Kernels INSTANCE = select();
+
+    private static Kernels select() {
+        if (!Boolean.parseBoolean(System.getProperty(Kernels.SIMD_PROPERTY, "true"))
+                || ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return new ScalarKernels();
+        }
+
+        try {
+            return (Kernels) Class.forName("org.carzuiliam.fastlic.utils.VectorKernels")
+                    .getDeclaredConstructor()
+                    .newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return new ScalarKernels();
+        }
+    }
+}
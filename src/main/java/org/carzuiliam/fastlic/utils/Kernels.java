@@ -0,0 +1,20 @@
+package org.carzuiliam.fastlic.utils;
+
+public interface Kernels {
+
+    String SIMD_PROPERTY = "fastlic.simd";
+
+    static Kernels get() {
+        return KernelSelector.INSTANCE;
+    }
+
+    String getName();
+
+    void normalize(float[] _vx, float[] _vy, int _from, int _to);
+
+    void fillRow(FlowField.Type _type, float[] _vx, float[] _vy, int _index, int _x0, float _cx, float _y, int _count);
+
+    void convolveRow(byte[] _src, int _srcOffset, byte[] _dst, int _dstOffset, int _width, float[] _kernel, float _weightSum);
+
+    void convolveColumn(byte[] _src, int[] _rowOffsets, byte[] _dst, int _dstOffset, int _width, float[] _kernel, float _weightSum);
+}
@@ -0,0 +1,142 @@
+package org.carzuiliam.fastlic.utils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public class MappedFlowField implements FlowSampler {
+
+    public static final int MAGIC = 0x574f4c46;
+    public static final int HEADER_SIZE = 16;
+
+    private static final int SAMPLE_BYTES = 8;
+    private static final int CHUNK_SHIFT = 30;
+    private static final long CHUNK_MASK = (1L << CHUNK_SHIFT) - 1;
+
+    private final int width;
+    private final int height;
+    private final MappedByteBuffer[] chunks;
+
+    private MappedFlowField(int _width, int _height, MappedByteBuffer[] _chunks) {
+        this.width = _width;
+        this.height = _height;
+        this.chunks = _chunks;
+    }
+
+    public static MappedFlowField open(Path _path) throws IOException {
+        try (FileChannel channel = FileChannel.open(_path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+            while (header.hasRemaining()) {
+                if (channel.read(header, header.position()) < 0) {
+                    throw new IOException("File " + _path + " is too short for a flow field header.");
+                }
+            }
+
+            header.flip();
+
+            if (header.getInt() != MAGIC) {
+                throw new IOException("File " + _path + " is not a flow field file.");
+            }
+
+            int width = header.getInt();
+            int height = header.getInt();
+
+            return map(channel, _path, HEADER_SIZE, width, height, ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    public static MappedFlowField openRaw(Path _path, int _width, int _height, ByteOrder _order) throws IOException {
+        try (FileChannel channel = FileChannel.open(_path, StandardOpenOption.READ)) {
+            return map(channel, _path, 0, _width, _height, _order);
+        }
+    }
+
+    public static void write(Path _path, FlowSampler _field) throws IOException {
+        int width = _field.getWidth();
+        int height = _field.getHeight();
+        float[] vec = new float[2];
+
+        try (OutputStream output = Files.newOutputStream(_path)) {
+            ByteBuffer row = ByteBuffer.allocate(Math.max(HEADER_SIZE, width * SAMPLE_BYTES)).order(ByteOrder.LITTLE_ENDIAN);
+
+            row.putInt(MAGIC).putInt(width).putInt(height).putInt(0);
+            output.write(row.array(), 0, HEADER_SIZE);
+
+            for (int j = 0; j < height; j++) {
+                row.clear();
+
+                for (int i = 0; i < width; i++) {
+                    _field.sample(i, j, vec);
+                    row.putFloat(vec[0]).putFloat(vec[1]);
+                }
+
+                output.write(row.array(), 0, row.position());
+            }
+        }
+    }
+
+    private static MappedFlowField map(FileChannel _channel, Path _path, long _offset, int _width, int _height, ByteOrder _order) throws IOException {
+        if (_width <= 0 || _height <= 0) {
+            throw new IOException("Invalid flow field size " + _width + "x" + _height + " in " + _path + ".");
+        }
+
+        long length = (long) _width * _height * SAMPLE_BYTES;
+
+        if (_channel.size() < _offset + length) {
+            throw new IOException("File " + _path + " is smaller than a " + _width + "x" + _height + " flow field.");
+        }
+
+        int count = (int) ((length + CHUNK_MASK) >>> CHUNK_SHIFT);
+        MappedByteBuffer[] chunks = new MappedByteBuffer[count];
+
+        for (int c = 0; c < count; c++) {
+            long start = (long) c << CHUNK_SHIFT;
+            long size = Math.min(length - start, 1L << CHUNK_SHIFT);
+
+            chunks[c] = _channel.map(FileChannel.MapMode.READ_ONLY, _offset + start, size);
+            chunks[c].order(_order);
+        }
+
+        return new MappedFlowField(_width, _height, chunks);
+    }
+
+    @Override
+    public int getWidth() {
+        return this.width;
+    }
+
+    @Override
+    public int getHeight() {
+        return this.height;
+    }
+
+    public long getSampleCount() {
+        return (long) this.width * this.height;
+    }
+
+    @Override
+    public void sample(int _i, int _j, float[] _out) {
+        long offset = ((long) _j * this.width + _i) * SAMPLE_BYTES;
+        MappedByteBuffer chunk = this.chunks[(int) (offset >>> CHUNK_SHIFT)];
+        int position = (int) (offset & CHUNK_MASK);
+
+        float x = chunk.getFloat(position);
+        float y = chunk.getFloat(position + 4);
+        float mag = (float) Math.sqrt(x * x + y * y);
+
+        if (mag != 0) {
+            x = x / mag;
+            y = y / mag;
+        }
+
+        _out[0] = x;
+        _out[1] = y;
+    }
+}
@@ -0,0 +1,62 @@
+package org.carzuiliam.fastlic.utils;
+
+public class NoiseTexture implements TextureSource {
+
+    private final int width;
+    private final int height;
+    private final long seed;
+
+    public NoiseTexture(int _width, int _height, long _seed) {
+        this.width = _width;
+        this.height = _height;
+        this.seed = _seed;
+    }
+
+    @Override
+    public int getWidth() {
+        return this.width;
+    }
+
+    @Override
+    public int getHeight() {
+        return this.height;
+    }
+
+    public long getSeed() {
+        return this.seed;
+    }
+
+    @Override
+    public void read(int _x0, int _y0, int _width, int _height, byte[] _out) {
+        for (int j = 0; j < _height; j++) {
+            long row = (long) (_y0 + j) * this.width + _x0;
+
+            for (int i = 0; i < _width; i++) {
+                _out[j * _width + i] = (byte) mix(this.seed + row + i);
+            }
+        }
+    }
+
+    public void fill(byte[] _out, int _x0, int _y0, int _x1, int _y1) {
+        for (int j = _y0; j < _y1; j++) {
+            long row = (long) j * this.width;
+
+            for (int i = _x0; i < _x1; i++) {
+                _out[j * this.width + i] = (byte) mix(this.seed + row + i);
+            }
+        }
+    }
+
+    public static long layerSeed(long _seed, int _layer) {
+        return (_layer == 0) ? _seed : mix(_seed + _layer);
+    }
+
+    static long mix(long _value) {
+        long z = _value * 0x9e3779b97f4a7c15L;
+
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,45 @@
+package org.carzuiliam.fastlic.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+public class PGMTileWriter implements AutoCloseable {
+
+    private final int width;
+    private final long headerSize;
+    private final FileChannel channel;
+
+    public PGMTileWriter(File _file, int _width, int _height) throws IOException {
+        byte[] header = ImageUtils.createPGMHeader(_width, _height);
+
+        this.width = _width;
+        this.headerSize = header.length;
+        this.channel = FileChannel.open(_file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+
+        this.write(ByteBuffer.wrap(header), 0);
+    }
+
+    public void writeTile(int _x0, int _y0, int _width, int _height, byte[] _data, int _offset, int _stride) throws IOException {
+        for (int j = 0; j < _height; j++) {
+            long position = this.headerSize + (long) (_y0 + j) * this.width + _x0;
+            this.write(ByteBuffer.wrap(_data, _offset + j * _stride, _width), position);
+        }
+    }
+
+    private void write(ByteBuffer _buffer, long _position) throws IOException {
+        long position = _position;
+
+        while (_buffer.hasRemaining()) {
+            position += this.channel.write(_buffer, position);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+}
@@ -0,0 +1,70 @@
+package org.carzuiliam.fastlic.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public class RawTexture implements TextureSource, AutoCloseable {
+
+    private final int width;
+    private final int height;
+    private final long offset;
+    private final FileChannel channel;
+
+    private RawTexture(int _width, int _height, long _offset, FileChannel _channel) {
+        this.width = _width;
+        this.height = _height;
+        this.offset = _offset;
+        this.channel = _channel;
+    }
+
+    public static RawTexture open(Path _path, int _width, int _height) throws IOException {
+        return open(_path, _width, _height, 0);
+    }
+
+    public static RawTexture open(Path _path, int _width, int _height, long _offset) throws IOException {
+        FileChannel channel = FileChannel.open(_path, StandardOpenOption.READ);
+
+        if (channel.size() < _offset + (long) _width * _height) {
+            channel.close();
+            throw new IOException("File " + _path + " is smaller than a " + _width + "x" + _height + " texture.");
+        }
+
+        return new RawTexture(_width, _height, _offset, channel);
+    }
+
+    @Override
+    public int getWidth() {
+        return this.width;
+    }
+
+    @Override
+    public int getHeight() {
+        return this.height;
+    }
+
+    @Override
+    public void read(int _x0, int _y0, int _width, int _height, byte[] _out) throws IOException {
+        for (int j = 0; j < _height; j++) {
+            ByteBuffer row = ByteBuffer.wrap(_out, j * _width, _width);
+            long position = this.offset + (long) (_y0 + j) * this.width + _x0;
+
+            while (row.hasRemaining()) {
+                int count = this.channel.read(row, position);
+
+                if (count < 0) {
+                    throw new IOException("Unexpected end of texture file.");
+                }
+
+                position += count;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+}
@@ -0,0 +1,11 @@
+package org.carzuiliam.fastlic.utils;
+
+import java.io.IOException;
+
+public interface RowWriter extends AutoCloseable {
+
+    void writeRow(byte[] _row, int _offset) throws IOException;
+
+    @Override
+    void close() throws IOException;
+}
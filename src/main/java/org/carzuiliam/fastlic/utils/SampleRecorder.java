@@ -0,0 +1,8 @@
+package org.carzuiliam.fastlic.utils;
+
+public interface SampleRecorder {
+
+    void add(int _texIdx, int _direction, int _lutIndex, float _weight);
+
+    void endPixel(float _totalWeight);
+}
@@ -0,0 +1,95 @@
+package org.carzuiliam.fastlic.utils;
+
+public class ScalarKernels implements Kernels {
+
+    @Override
+    public String getName() {
+        return "scalar";
+    }
+
+    @Override
+    public void normalize(float[] _vx, float[] _vy, int _from, int _to) {
+        for (int k = _from; k < _to; k++) {
+            float x = _vx[k];
+            float y = _vy[k];
+            float mag = (float) Math.sqrt(x * x + y * y);
+
+            if (mag != 0) {
+                _vx[k] = x / mag;
+                _vy[k] = y / mag;
+            }
+        }
+    }
+
+    @Override
+    public void fillRow(FlowField.Type _type, float[] _vx, float[] _vy, int _index, int _x0, float _cx, float _y, int _count) {
+        for (int i = 0; i < _count; i++) {
+            float x = (_x0 + i) - _cx;
+            int index = _index + i;
+
+            switch (_type) {
+                case SADDLE -> {
+                    _vx[index] = x;
+                    _vy[index] = -_y;
+                }
+                case CENTER -> {
+                    _vx[index] = -_y;
+                    _vy[index] = x;
+                }
+                case SOURCE -> {
+                    _vx[index] = x;
+                    _vy[index] = _y;
+                }
+                case SINK -> {
+                    _vx[index] = -x;
+                    _vy[index] = -_y;
+                }
+                case SPIRAL_SOURCE -> {
+                    _vx[index] = x - _y;
+                    _vy[index] = x + _y;
+                }
+                case SPIRAL_SINK -> {
+                    _vx[index] = -x - _y;
+                    _vy[index] = _y - x;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void convolveRow(byte[] _src, int _srcOffset, byte[] _dst, int _dstOffset, int _width, float[] _kernel, float _weightSum) {
+        this.convolveRow(_src, _srcOffset, _dst, _dstOffset, _width, 0, _width, _kernel, _weightSum);
+    }
+
+    void convolveRow(byte[] _src, int _srcOffset, byte[] _dst, int _dstOffset, int _width, int _x0, int _x1, float[] _kernel, float _weightSum) {
+        int radius = _kernel.length / 2;
+
+        for (int x = _x0; x < _x1; x++) {
+            float sum = 0;
+
+            for (int k = -radius; k <= radius; k++) {
+                int px = Math.min(Math.max(x + k, 0), _width - 1);
+                sum += Byte.toUnsignedInt(_src[_srcOffset + px]) * _kernel[k + radius];
+            }
+
+            _dst[_dstOffset + x] = (byte) (sum / _weightSum);
+        }
+    }
+
+    @Override
+    public void convolveColumn(byte[] _src, int[] _rowOffsets, byte[] _dst, int _dstOffset, int _width, float[] _kernel, float _weightSum) {
+        this.convolveColumn(_src, _rowOffsets, _dst, _dstOffset, 0, _width, _kernel, _weightSum);
+    }
+
+    void convolveColumn(byte[] _src, int[] _rowOffsets, byte[] _dst, int _dstOffset, int _x0, int _x1, float[] _kernel, float _weightSum) {
+        for (int x = _x0; x < _x1; x++) {
+            float sum = 0;
+
+            for (int k = 0; k < _kernel.length; k++) {
+                sum += Byte.toUnsignedInt(_src[_rowOffsets[k] + x]) * _kernel[k];
+            }
+
+            _dst[_dstOffset + x] = (byte) (sum / _weightSum);
+        }
+    }
+}
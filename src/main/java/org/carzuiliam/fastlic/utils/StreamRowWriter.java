@@ -0,0 +1,47 @@
+package org.carzuiliam.fastlic.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+public class StreamRowWriter implements RowWriter {
+
+    private final OutputStream output;
+    private final int width;
+    private final boolean owned;
+
+    public StreamRowWriter(File _file, int _width, byte[] _header) throws IOException {
+        this(new FileOutputStream(_file), _width, _header, true);
+    }
+
+    // Rows written to a caller's stream are flushed on close, but the stream is left open.
+    public StreamRowWriter(OutputStream _output, int _width, byte[] _header) throws IOException {
+        this(_output, _width, _header, false);
+    }
+
+    private StreamRowWriter(OutputStream _output, int _width, byte[] _header, boolean _owned) throws IOException {
+        this.output = new BufferedOutputStream(_output, 1 << 16);
+        this.width = _width;
+        this.owned = _owned;
+
+        if (_header != null) {
+            this.output.write(_header);
+        }
+    }
+
+    @Override
+    public void writeRow(byte[] _row, int _offset) throws IOException {
+        this.output.write(_row, _offset, this.width);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (this.owned) {
+            this.output.close();
+        } else {
+            this.output.flush();
+        }
+    }
+}
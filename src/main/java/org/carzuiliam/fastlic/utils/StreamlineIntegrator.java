@@ -0,0 +1,226 @@
+package org.carzuiliam.fastlic.utils;
+
+public abstract class StreamlineIntegrator {
+
+    public enum Method {
+        EULER,
+        RK2,
+        RK4,
+        RKF45
+    }
+
+    private static final float MIN_STEP = 0.05f;
+
+    protected final float step;
+    protected final float[] vec = new float[2];
+
+    private long evaluations;
+
+    protected StreamlineIntegrator(float _step) {
+        this.step = _step;
+    }
+
+    public static StreamlineIntegrator create(Method _method, float _step, float _tolerance) {
+        return switch (_method) {
+            case EULER -> new Euler(_step);
+            case RK2 -> new Midpoint(_step);
+            case RK4 -> new RungeKutta4(_step);
+            case RKF45 -> new Fehlberg(_step, _tolerance);
+        };
+    }
+
+    public long getEvaluations() {
+        return this.evaluations;
+    }
+
+    public void reset() {
+    }
+
+    // Moves _position one step along _sign * field, at most _maxLength long; returns the length travelled, 0 at a critical point.
+    public abstract float advance(FlowSampler _field, float[] _position, float _sign, float _maxLength);
+
+    protected boolean evaluate(FlowSampler _field, float _x, float _y, float _sign) {
+        _field.interpolate(_x, _y, this.vec);
+        this.evaluations++;
+
+        this.vec[0] *= _sign;
+        this.vec[1] *= _sign;
+
+        return this.vec[0] != 0 || this.vec[1] != 0;
+    }
+
+    private static class Euler extends StreamlineIntegrator {
+        Euler(float _step) {
+            super(_step);
+        }
+
+        @Override
+        public float advance(FlowSampler _field, float[] _position, float _sign, float _maxLength) {
+            if (!this.evaluate(_field, _position[0], _position[1], _sign)) {
+                return 0.0f;
+            }
+
+            float h = Math.min(this.step, _maxLength);
+
+            _position[0] += this.vec[0] * h;
+            _position[1] += this.vec[1] * h;
+
+            return h;
+        }
+    }
+
+    private static class Midpoint extends StreamlineIntegrator {
+        Midpoint(float _step) {
+            super(_step);
+        }
+
+        @Override
+        public float advance(FlowSampler _field, float[] _position, float _sign, float _maxLength) {
+            float x = _position[0];
+            float y = _position[1];
+
+            if (!this.evaluate(_field, x, y, _sign)) {
+                return 0.0f;
+            }
+
+            float h = Math.min(this.step, _maxLength);
+            float k1x = this.vec[0];
+            float k1y = this.vec[1];
+
+            if (!this.evaluate(_field, x + 0.5f * h * k1x, y + 0.5f * h * k1y, _sign)) {
+                this.vec[0] = k1x;
+                this.vec[1] = k1y;
+            }
+
+            _position[0] = x + this.vec[0] * h;
+            _position[1] = y + this.vec[1] * h;
+
+            return h;
+        }
+    }
+
+    private static class RungeKutta4 extends StreamlineIntegrator {
+        RungeKutta4(float _step) {
+            super(_step);
+        }
+
+        @Override
+        public float advance(FlowSampler _field, float[] _position, float _sign, float _maxLength) {
+            float x = _position[0];
+            float y = _position[1];
+
+            if (!this.evaluate(_field, x, y, _sign)) {
+                return 0.0f;
+            }
+
+            float h = Math.min(this.step, _maxLength);
+            float k1x = this.vec[0];
+            float k1y = this.vec[1];
+
+            this.evaluate(_field, x + 0.5f * h * k1x, y + 0.5f * h * k1y, _sign);
+            float k2x = this.vec[0];
+            float k2y = this.vec[1];
+
+            this.evaluate(_field, x + 0.5f * h * k2x, y + 0.5f * h * k2y, _sign);
+            float k3x = this.vec[0];
+            float k3y = this.vec[1];
+
+            this.evaluate(_field, x + h * k3x, y + h * k3y, _sign);
+            float k4x = this.vec[0];
+            float k4y = this.vec[1];
+
+            _position[0] = x + h * (k1x + 2.0f * k2x + 2.0f * k3x + k4x) / 6.0f;
+            _position[1] = y + h * (k1y + 2.0f * k2y + 2.0f * k3y + k4y) / 6.0f;
+
+            return h;
+        }
+    }
+
+    private static class Fehlberg extends StreamlineIntegrator {
+        private static final float[][] A = {
+                {},
+                {1.0f / 4},
+                {3.0f / 32, 9.0f / 32},
+                {1932.0f / 2197, -7200.0f / 2197, 7296.0f / 2197},
+                {439.0f / 216, -8.0f, 3680.0f / 513, -845.0f / 4104},
+                {-8.0f / 27, 2.0f, -3544.0f / 2565, 1859.0f / 4104, -11.0f / 40}
+        };
+        private static final float[] B4 = {25.0f / 216, 0.0f, 1408.0f / 2565, 2197.0f / 4104, -1.0f / 5, 0.0f};
+        private static final float[] B5 = {16.0f / 135, 0.0f, 6656.0f / 12825, 28561.0f / 56430, -9.0f / 50, 2.0f / 55};
+
+        private final float tolerance;
+        private final float[] kx = new float[6];
+        private final float[] ky = new float[6];
+
+        private float h;
+
+        Fehlberg(float _step, float _tolerance) {
+            super(_step);
+            this.tolerance = _tolerance;
+            this.h = _step;
+        }
+
+        @Override
+        public void reset() {
+            this.h = this.step;
+        }
+
+        @Override
+        public float advance(FlowSampler _field, float[] _position, float _sign, float _maxLength) {
+            float x = _position[0];
+            float y = _position[1];
+
+            if (!this.evaluate(_field, x, y, _sign)) {
+                return 0.0f;
+            }
+
+            this.kx[0] = this.vec[0];
+            this.ky[0] = this.vec[1];
+
+            while (true) {
+                float h = Math.min(this.h, _maxLength);
+
+                for (int s = 1; s < 6; s++) {
+                    float sx = x;
+                    float sy = y;
+
+                    for (int r = 0; r < s; r++) {
+                        sx += h * A[s][r] * this.kx[r];
+                        sy += h * A[s][r] * this.ky[r];
+                    }
+
+                    this.evaluate(_field, sx, sy, _sign);
+                    this.kx[s] = this.vec[0];
+                    this.ky[s] = this.vec[1];
+                }
+
+                float x4 = x;
+                float y4 = y;
+                float x5 = x;
+                float y5 = y;
+
+                for (int s = 0; s < 6; s++) {
+                    x4 += h * B4[s] * this.kx[s];
+                    y4 += h * B4[s] * this.ky[s];
+                    x5 += h * B5[s] * this.kx[s];
+                    y5 += h * B5[s] * this.ky[s];
+                }
+
+                float error = (float) Math.sqrt((x5 - x4) * (x5 - x4) + (y5 - y4) * (y5 - y4));
+                float scale = (error > 0.0f) ? 0.9f * (float) Math.sqrt(Math.sqrt(this.tolerance / error)) : 4.0f;
+
+                if (error > this.tolerance && h > MIN_STEP) {
+                    this.h = Math.max(MIN_STEP, h * Math.max(0.2f, scale));
+                    continue;
+                }
+
+                this.h = Math.min(this.step, Math.max(MIN_STEP, h * Math.min(4.0f, scale)));
+
+                _position[0] = x5;
+                _position[1] = y5;
+
+                return h;
+            }
+        }
+    }
+}
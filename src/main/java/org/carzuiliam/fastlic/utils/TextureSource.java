@@ -0,0 +1,12 @@
+package org.carzuiliam.fastlic.utils;
+
+import java.io.IOException;
+
+public interface TextureSource {
+
+    int getWidth();
+
+    int getHeight();
+
+    void read(int _x0, int _y0, int _width, int _height, byte[] _out) throws IOException;
+}
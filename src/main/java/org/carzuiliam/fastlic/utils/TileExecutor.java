@@ -0,0 +1,73 @@
+package org.carzuiliam.fastlic.utils;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+public class TileExecutor {
+
+    public static final int DEFAULT_TILE_SIZE = 64;
+
+    @FunctionalInterface
+    public interface TileTask {
+        void run(int _x0, int _y0, int _x1, int _y1);
+    }
+
+    public static void execute(ForkJoinPool _pool, int _width, int _height, int _tileSize, TileTask _task) {
+        int tilesX = (_width + _tileSize - 1) / _tileSize;
+        int tilesY = (_height + _tileSize - 1) / _tileSize;
+
+        if (tilesX * tilesY == 0) {
+            return;
+        }
+
+        if (_pool == null) {
+            for (int y0 = 0; y0 < _height; y0 += _tileSize) {
+                for (int x0 = 0; x0 < _width; x0 += _tileSize) {
+                    _task.run(x0, y0, Math.min(x0 + _tileSize, _width), Math.min(y0 + _tileSize, _height));
+                }
+            }
+            return;
+        }
+
+        _pool.invoke(new TileRange(_width, _height, _tileSize, tilesX, 0, tilesX * tilesY, _task));
+    }
+
+    @SuppressWarnings("serial")
+    private static class TileRange extends RecursiveAction {
+        private final int width;
+        private final int height;
+        private final int tileSize;
+        private final int tilesX;
+        private final int from;
+        private final int to;
+        private final TileTask task;
+
+        TileRange(int _width, int _height, int _tileSize, int _tilesX, int _from, int _to, TileTask _task) {
+            this.width = _width;
+            this.height = _height;
+            this.tileSize = _tileSize;
+            this.tilesX = _tilesX;
+            this.from = _from;
+            this.to = _to;
+            this.task = _task;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.to - this.from == 1) {
+                int x0 = (this.from % this.tilesX) * this.tileSize;
+                int y0 = (this.from / this.tilesX) * this.tileSize;
+
+                this.task.run(x0, y0, Math.min(x0 + this.tileSize, this.width), Math.min(y0 + this.tileSize, this.height));
+                return;
+            }
+
+            int mid = (this.from + this.to) >>> 1;
+
+            invokeAll(
+                    new TileRange(this.width, this.height, this.tileSize, this.tilesX, this.from, mid, this.task),
+                    new TileRange(this.width, this.height, this.tileSize, this.tilesX, mid, this.to, this.task)
+            );
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package org.carzuiliam.fastlic.utils;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+public class VectorKernels extends ScalarKernels {
+
+    private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+    private static final int LANES = FLOATS.length();
+
+    private final VectorSpecies<Byte> bytes;
+    private final IntVector iota;
+
+    public VectorKernels() {
+        if (LANES < 8 || INTS.length() != LANES) {
+            throw new UnsupportedOperationException("Preferred vector shape has only " + LANES + " float lanes.");
+        }
+
+        this.bytes = VectorSpecies.of(byte.class, VectorShape.forBitSize(LANES * 8));
+        this.iota = (IntVector) INTS.iotaShuffle(0, 1, false).toVector();
+    }
+
+    @Override
+    public String getName() {
+        return "vector-" + LANES + "x32";
+    }
+
+    @Override
+    public void normalize(float[] _vx, float[] _vy, int _from, int _to) {
+        int k = _from;
+
+        for (; k <= _to - LANES; k += LANES) {
+            FloatVector x = FloatVector.fromArray(FLOATS, _vx, k);
+            FloatVector y = FloatVector.fromArray(FLOATS, _vy, k);
+            FloatVector mag = x.mul(x).add(y.mul(y)).sqrt();
+            VectorMask<Float> nonZero = mag.compare(VectorOperators.NE, 0.0f);
+
+            x.blend(x.div(mag), nonZero).intoArray(_vx, k);
+            y.blend(y.div(mag), nonZero).intoArray(_vy, k);
+        }
+
+        super.normalize(_vx, _vy, k, _to);
+    }
+
+    @Override
+    public void fillRow(FlowField.Type _type, float[] _vx, float[] _vy, int _index, int _x0, float _cx, float _y, int _count) {
+        FloatVector y = FloatVector.broadcast(FLOATS, _y);
+        int i = 0;
+
+        for (; i <= _count - LANES; i += LANES) {
+            FloatVector x = ((FloatVector) this.iota.add(_x0 + i).convert(VectorOperators.I2F, 0)).sub(_cx);
+            int index = _index + i;
+
+            FloatVector vx;
+            FloatVector vy;
+
+            switch (_type) {
+                case SADDLE -> {
+                    vx = x;
+                    vy = y.neg();
+                }
+                case CENTER -> {
+                    vx = y.neg();
+                    vy = x;
+                }
+                case SOURCE -> {
+                    vx = x;
+                    vy = y;
+                }
+                case SINK -> {
+                    vx = x.neg();
+                    vy = y.neg();
+                }
+                case SPIRAL_SOURCE -> {
+                    vx = x.sub(y);
+                    vy = x.add(y);
+                }
+                default -> {
+                    vx = x.neg().sub(y);
+                    vy = y.sub(x);
+                }
+            }
+
+            vx.intoArray(_vx, index);
+            vy.intoArray(_vy, index);
+        }
+
+        super.fillRow(_type, _vx, _vy, _index + i, _x0 + i, _cx, _y, _count - i);
+    }
+
+    @Override
+    public void convolveRow(byte[] _src, int _srcOffset, byte[] _dst, int _dstOffset, int _width, float[] _kernel, float _weightSum) {
+        int radius = _kernel.length / 2;
+        int x0 = Math.min(radius, _width);
+        int x = x0;
+
+        super.convolveRow(_src, _srcOffset, _dst, _dstOffset, _width, 0, x0, _kernel, _weightSum);
+
+        for (; x <= _width - radius - LANES; x += LANES) {
+            FloatVector sum = FloatVector.zero(FLOATS);
+
+            for (int k = -radius; k <= radius; k++) {
+                sum = sum.add(this.load(_src, _srcOffset + x + k).mul(_kernel[k + radius]));
+            }
+
+            this.store(sum.div(_weightSum), _dst, _dstOffset + x);
+        }
+
+        super.convolveRow(_src, _srcOffset, _dst, _dstOffset, _width, x, _width, _kernel, _weightSum);
+    }
+
+    @Override
+    public void convolveColumn(byte[] _src, int[] _rowOffsets, byte[] _dst, int _dstOffset, int _width, float[] _kernel, float _weightSum) {
+        int x = 0;
+
+        for (; x <= _width - LANES; x += LANES) {
+            FloatVector sum = FloatVector.zero(FLOATS);
+
+            for (int k = 0; k < _kernel.length; k++) {
+                sum = sum.add(this.load(_src, _rowOffsets[k] + x).mul(_kernel[k]));
+            }
+
+            this.store(sum.div(_weightSum), _dst, _dstOffset + x);
+        }
+
+        super.convolveColumn(_src, _rowOffsets, _dst, _dstOffset, x, _width, _kernel, _weightSum);
+    }
+
+    private FloatVector load(byte[] _src, int _offset) {
+        return (FloatVector) ByteVector.fromArray(this.bytes, _src, _offset)
+                .convertShape(VectorOperators.B2I, INTS, 0)
+                .lanewise(VectorOperators.AND, 0xff)
+                .convert(VectorOperators.I2F, 0);
+    }
+
+    private void store(FloatVector _values, byte[] _dst, int _offset) {
+        ByteVector values = (ByteVector) _values.convertShape(VectorOperators.F2I, INTS, 0)
+                .convertShape(VectorOperators.I2B, this.bytes, 0);
+
+        values.intoArray(_dst, _offset);
+    }
+}